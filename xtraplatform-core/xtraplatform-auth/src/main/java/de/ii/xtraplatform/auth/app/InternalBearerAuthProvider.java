@@ -46,6 +46,10 @@ public class InternalBearerAuthProvider implements AuthProvider<User> {
 
   @Override
   public AuthDynamicFeature getAuthDynamicFeature() {
+    if (tokenHandler instanceof JwtTokenHandler) {
+      ((JwtTokenHandler) tokenHandler).registerMetrics(dropwizard.getEnvironment().metrics());
+    }
+
     JwtTokenAuthenticator tokenAuthenticator = new JwtTokenAuthenticator(tokenHandler);
 
     CachingAuthenticator<String, User> cachingAuthenticator =
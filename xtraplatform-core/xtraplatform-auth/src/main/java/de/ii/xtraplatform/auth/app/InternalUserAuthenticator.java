@@ -7,21 +7,40 @@
  */
 package de.ii.xtraplatform.auth.app;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.base.Joiner;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import de.ii.xtraplatform.auth.domain.ImmutableUser;
 import de.ii.xtraplatform.auth.domain.Role;
 import de.ii.xtraplatform.auth.domain.User;
 import de.ii.xtraplatform.auth.domain.UserAuthenticator;
 import de.ii.xtraplatform.dropwizard.domain.ConfigurationProvider;
+import de.ii.xtraplatform.runtime.domain.AuthConfig;
+import de.ii.xtraplatform.runtime.domain.LogContext;
+import de.ii.xtraplatform.runtime.domain.StoreConfiguration.StoreMode;
 import de.ii.xtraplatform.store.domain.entities.EntityData;
 import de.ii.xtraplatform.store.domain.entities.EntityDataStore;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.time.Instant;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Instantiate;
+import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Requires;
+import org.apache.felix.ipojo.annotations.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,17 +58,52 @@ public class InternalUserAuthenticator implements UserAuthenticator {
           .passwordExpiresAt(0)
           .build();
 
+  private static final int MAX_VERIFIED = 10_000;
+  private static final int VERIFIED_KEY_BYTES = 32;
+
   private final boolean isAccessRestricted;
+  private final boolean isReadOnly;
+  private final int passwordHashIterations;
   private final EntityDataStore<de.ii.xtraplatform.auth.app.User.UserData> userRepository;
+  private final Cache<String, Boolean> verified;
+  private final HashFunction verifiedKeyHash;
+  private final Set<String> upgrading;
+  private volatile ExecutorService upgradeExecutor;
 
   public InternalUserAuthenticator(
       @Requires ConfigurationProvider configurationProvider,
       @Requires EntityDataStore<EntityData> entityRepository) {
-    this.isAccessRestricted =
-        Optional.ofNullable(configurationProvider.getConfiguration().auth)
-            .map(authConfig -> !authConfig.allowAnonymousAccess)
-            .orElse(true);
+    Optional<AuthConfig> authConfig =
+        Optional.ofNullable(configurationProvider.getConfiguration().auth);
+    this.isAccessRestricted = authConfig.map(config -> !config.allowAnonymousAccess).orElse(true);
+    this.isReadOnly = configurationProvider.getConfiguration().store.mode == StoreMode.READ_ONLY;
+    this.passwordHashIterations =
+        authConfig
+            .map(config -> config.passwordHashIterations)
+            .orElse(PasswordHash.PBKDF2_ITERATIONS);
     this.userRepository = entityRepository.forType(de.ii.xtraplatform.auth.app.User.UserData.class);
+    this.verified =
+        Caffeine.newBuilder()
+            .maximumSize(MAX_VERIFIED)
+            .expireAfterWrite(
+                authConfig.map(config -> config.passwordVerificationCacheSeconds).orElse(0),
+                TimeUnit.SECONDS)
+            .build();
+    this.verifiedKeyHash = Hashing.hmacSha256(randomKey());
+    this.upgrading = ConcurrentHashMap.newKeySet();
+  }
+
+  @Validate
+  private void onStart() {
+    this.upgradeExecutor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("auth.upgrade-%d").setDaemon(true).build());
+  }
+
+  @Invalidate
+  private void onStop() {
+    upgradeExecutor.shutdown();
+    this.upgradeExecutor = null;
   }
 
   @Override
@@ -59,7 +113,7 @@ public class InternalUserAuthenticator implements UserAuthenticator {
 
       de.ii.xtraplatform.auth.app.User.UserData userData = userRepository.get(username);
 
-      if (PasswordHash.validatePassword(password, userData.getPassword())) {
+      if (verify(userData.getId(), password, userData.getPassword())) {
         if (LOGGER.isTraceEnabled()) {
           LOGGER.trace(
               "Authenticated {} {} {}",
@@ -68,6 +122,11 @@ public class InternalUserAuthenticator implements UserAuthenticator {
               PasswordHash.createHash(password));
         }
 
+        if (!isReadOnly
+            && PasswordHash.needsUpgrade(userData.getPassword(), passwordHashIterations)) {
+          upgrade(userData, password);
+        }
+
         long now = Instant.now().toEpochMilli();
 
         return Optional.of(
@@ -92,7 +151,7 @@ public class InternalUserAuthenticator implements UserAuthenticator {
       }
 
       if (Objects.equals(username, SUPER_ADMIN.getId())
-          && PasswordHash.validatePassword(password, SUPER_ADMIN.getPassword())) {
+          && verify(SUPER_ADMIN.getId(), password, SUPER_ADMIN.getPassword())) {
         if (LOGGER.isTraceEnabled()) {
           LOGGER.trace(
               "Authenticated {} {} {}",
@@ -120,4 +179,80 @@ public class InternalUserAuthenticator implements UserAuthenticator {
 
     return Optional.empty();
   }
+
+  // only successful checks are cached, the key changes with the stored hash and is a HMAC with a
+  // random secret of this process, so a leaked key does not help to guess the password offline
+  private boolean verify(String username, String password, String hash) {
+    if (Objects.isNull(password)) {
+      return false;
+    }
+
+    String key =
+        Joiner.on('\n')
+            .join(
+                username,
+                verifiedKeyHash
+                    .hashString(Joiner.on('\n').join(password, hash), StandardCharsets.UTF_8)
+                    .toString());
+
+    if (Objects.nonNull(verified.getIfPresent(key))) {
+      return true;
+    }
+
+    if (PasswordHash.validatePassword(password, hash)) {
+      verified.put(key, true);
+      return true;
+    }
+
+    return false;
+  }
+
+  // hashing is slow, so it does not run on the request thread, and only once for concurrent logins
+  private void upgrade(de.ii.xtraplatform.auth.app.User.UserData userData, String password) {
+    ExecutorService executor = upgradeExecutor;
+    if (Objects.isNull(executor) || !upgrading.add(userData.getId())) {
+      return;
+    }
+
+    String verifiedHash = userData.getPassword();
+
+    try {
+      executor.execute(
+          () -> {
+            try {
+              String hash = PasswordHash.createHash(password, passwordHashIterations);
+
+              // the user might have been changed in the meantime, e.g. a new password was set
+              if (!userRepository.has(userData.getId())) {
+                return;
+              }
+              de.ii.xtraplatform.auth.app.User.UserData current =
+                  userRepository.get(userData.getId());
+              if (!Objects.equals(current.getPassword(), verifiedHash)) {
+                return;
+              }
+
+              de.ii.xtraplatform.auth.app.User.UserData upgraded =
+                  new ImmutableUserData.Builder().from(current).password(hash).build();
+
+              userRepository.put(userData.getId(), upgraded).join();
+            } catch (RuntimeException e) {
+              LogContext.error(
+                  LOGGER, e, "Could not upgrade password hash of {}", userData.getId());
+            } finally {
+              upgrading.remove(userData.getId());
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      // stopped in the meantime
+      upgrading.remove(userData.getId());
+    }
+  }
+
+  private static byte[] randomKey() {
+    byte[] key = new byte[VERIFIED_KEY_BYTES];
+    new SecureRandom().nextBytes(key);
+
+    return key;
+  }
 }
@@ -7,6 +7,7 @@
  */
 package de.ii.xtraplatform.auth.app;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Strings;
 import de.ii.xtraplatform.auth.domain.ImmutableUser;
 import de.ii.xtraplatform.auth.domain.Role;
@@ -18,7 +19,6 @@ import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.impl.DefaultJwtBuilder;
-import io.jsonwebtoken.impl.DefaultJwtParser;
 import io.jsonwebtoken.security.Keys;
 import java.security.Key;
 import java.time.Instant;
@@ -42,9 +42,15 @@ public class JwtTokenHandler implements TokenHandler {
   private static final Logger LOGGER = LoggerFactory.getLogger(JwtTokenHandler.class);
 
   private final AuthConfig authConfig;
+  private final JwtVerifier verifier;
 
   public JwtTokenHandler(@Requires XtraPlatform xtraPlatform) {
     this.authConfig = xtraPlatform.getConfiguration().auth;
+    this.verifier = new JwtVerifier(authConfig);
+  }
+
+  void registerMetrics(MetricRegistry metricRegistry) {
+    verifier.registerMetrics(metricRegistry, "internal");
   }
 
   @Override
@@ -71,11 +77,7 @@ public class JwtTokenHandler implements TokenHandler {
   public Optional<User> parseToken(String token) {
     if (authConfig.isActive() && authConfig.isJwt()) {
       try {
-        Claims claimsJws =
-            new DefaultJwtParser()
-                .setSigningKey(authConfig.jwtSigningKey)
-                .parseClaimsJws(token)
-                .getBody();
+        Claims claimsJws = verifier.verify(token);
 
         return Optional.of(
             ImmutableUser.builder()
@@ -99,11 +101,7 @@ public class JwtTokenHandler implements TokenHandler {
   public <T> Optional<T> parseTokenClaim(String token, String name, Class<T> type) {
     if (authConfig.isActive() && authConfig.isJwt()) {
       try {
-        Claims claimsJws =
-            new DefaultJwtParser()
-                .setSigningKey(authConfig.jwtSigningKey)
-                .parseClaimsJws(token)
-                .getBody();
+        Claims claimsJws = verifier.verify(token);
 
         return Optional.ofNullable(claimsJws.get(name, type));
 
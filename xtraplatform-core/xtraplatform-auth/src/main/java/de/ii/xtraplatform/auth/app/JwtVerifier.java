@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.auth.app;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import de.ii.xtraplatform.runtime.domain.AuthConfig;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies tokens with a parser that is only rebuilt when the signing key changes. Verified claims
+ * are cached by token digest until the token expires, but at most for {@link #MAX_AGE}.
+ */
+public class JwtVerifier {
+
+  private static final Duration MAX_AGE = Duration.ofMinutes(10);
+  private static final int MAX_SIZE = 10_000;
+
+  private final AuthConfig authConfig;
+  private final Cache<String, Claims> verified;
+  private volatile String signingKey;
+  private volatile JwtParser parser;
+
+  public JwtVerifier(AuthConfig authConfig) {
+    this.authConfig = authConfig;
+    this.verified =
+        Caffeine.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .expireAfter(new ClaimsExpiry())
+            .recordStats()
+            .build();
+  }
+
+  /** Throws the exceptions of {@link JwtParser#parseClaimsJws(String)} for invalid tokens. */
+  public Claims verify(String token) {
+    JwtParser currentParser = getParser();
+
+    return verified.get(digest(token), ignore -> currentParser.parseClaimsJws(token).getBody());
+  }
+
+  public void registerMetrics(MetricRegistry registry, String name) {
+    registerGauge(registry, name, "hits", () -> verified.stats().hitCount());
+    registerGauge(registry, name, "misses", () -> verified.stats().missCount());
+    registerGauge(registry, name, "size", verified::estimatedSize);
+  }
+
+  // the key might be generated after startup, see JwtTokenHandler
+  private JwtParser getParser() {
+    String currentKey = authConfig.jwtSigningKey;
+
+    if (!Objects.equals(currentKey, signingKey) || Objects.isNull(parser)) {
+      synchronized (this) {
+        if (!Objects.equals(currentKey, signingKey) || Objects.isNull(parser)) {
+          this.parser = Jwts.parser().setSigningKey(Base64.getDecoder().decode(currentKey));
+          this.signingKey = currentKey;
+          verified.invalidateAll();
+        }
+      }
+    }
+
+    return parser;
+  }
+
+  // tokens are not kept in memory as cache keys
+  public static String digest(String token) {
+    try {
+      MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+
+      return Base64.getEncoder()
+          .encodeToString(messageDigest.digest(token.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void registerGauge(
+      MetricRegistry registry, String name, String metric, Gauge<Long> gauge) {
+    String fullName = MetricRegistry.name(JwtVerifier.class, name, metric);
+
+    if (!registry.getNames().contains(fullName)) {
+      registry.register(fullName, gauge);
+    }
+  }
+
+  private static class ClaimsExpiry implements Expiry<String, Claims> {
+
+    @Override
+    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+      long maxAge = MAX_AGE.toNanos();
+
+      if (Objects.isNull(claims.getExpiration())) {
+        return maxAge;
+      }
+
+      long remaining =
+          TimeUnit.MILLISECONDS.toNanos(
+              claims.getExpiration().getTime() - System.currentTimeMillis());
+
+      return Math.max(0, Math.min(maxAge, remaining));
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String key, Claims claims, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, claims, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(
+        String key, Claims claims, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
@@ -39,6 +39,9 @@ import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 
@@ -48,17 +51,27 @@ import javax.crypto.spec.PBEKeySpec;
  * www: http://crackstation.net/hashing-security.htm
  */
 public class PasswordHash {
-  public static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA1";
+  public static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA256";
+  public static final String PBKDF2_SCHEME = "sha256";
+
+  // hashes without a scheme prefix were created with SHA1
+  public static final String LEGACY_PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA1";
 
   // The following constants may be changed without breaking existing hashes.
   public static final int SALT_BYTE_SIZE = 24;
-  public static final int HASH_BYTE_SIZE = 24;
-  public static final int PBKDF2_ITERATIONS = 1000;
+  public static final int HASH_BYTE_SIZE = 32;
+  public static final int PBKDF2_ITERATIONS = 310000;
 
   public static final int ITERATION_INDEX = 0;
   public static final int SALT_INDEX = 1;
   public static final int PBKDF2_INDEX = 2;
 
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  // factories are not guaranteed to be thread-safe, but expensive to look up on every call
+  private static final ThreadLocal<Map<String, SecretKeyFactory>> FACTORIES =
+      ThreadLocal.withInitial(HashMap::new);
+
   /**
    * Returns a salted PBKDF2 hash of the password.
    *
@@ -66,8 +79,19 @@ public class PasswordHash {
    * @return a salted PBKDF2 hash of the password
    */
   public static String createHash(String password) {
+    return createHash(password, PBKDF2_ITERATIONS);
+  }
+
+  /**
+   * Returns a salted PBKDF2 hash of the password.
+   *
+   * @param password the password to hash
+   * @param iterations the iteration count (slowness factor)
+   * @return a salted PBKDF2 hash of the password
+   */
+  public static String createHash(String password, int iterations) {
     try {
-      return createHash(password.toCharArray());
+      return createHash(password.toCharArray(), iterations);
     } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
       return null;
     }
@@ -81,15 +105,26 @@ public class PasswordHash {
    */
   public static String createHash(char[] password)
       throws NoSuchAlgorithmException, InvalidKeySpecException {
+    return createHash(password, PBKDF2_ITERATIONS);
+  }
+
+  /**
+   * Returns a salted PBKDF2 hash of the password.
+   *
+   * @param password the password to hash
+   * @param iterations the iteration count (slowness factor)
+   * @return a salted PBKDF2 hash of the password
+   */
+  public static String createHash(char[] password, int iterations)
+      throws NoSuchAlgorithmException, InvalidKeySpecException {
     // Generate a random salt
-    SecureRandom random = new SecureRandom();
     byte[] salt = new byte[SALT_BYTE_SIZE];
-    random.nextBytes(salt);
+    RANDOM.nextBytes(salt);
 
     // Hash the password
-    byte[] hash = pbkdf2(password, salt, PBKDF2_ITERATIONS, HASH_BYTE_SIZE);
-    // format iterations:salt:hash
-    return PBKDF2_ITERATIONS + ":" + toHex(salt) + ":" + toHex(hash);
+    byte[] hash = pbkdf2(PBKDF2_ALGORITHM, password, salt, iterations, HASH_BYTE_SIZE);
+    // format scheme:iterations:salt:hash
+    return PBKDF2_SCHEME + ":" + iterations + ":" + toHex(salt) + ":" + toHex(hash);
   }
 
   /**
@@ -118,17 +153,36 @@ public class PasswordHash {
       throws NoSuchAlgorithmException, InvalidKeySpecException {
     // Decode the hash into its parameters
     String[] params = correctHash.split(":");
-    int iterations = Integer.parseInt(params[ITERATION_INDEX]);
-    byte[] salt = fromHex(params[SALT_INDEX]);
-    byte[] hash = fromHex(params[PBKDF2_INDEX]);
+    int offset = isLegacy(params) ? 0 : 1;
+    String algorithm = isLegacy(params) ? LEGACY_PBKDF2_ALGORITHM : PBKDF2_ALGORITHM;
+    int iterations = Integer.parseInt(params[offset + ITERATION_INDEX]);
+    byte[] salt = fromHex(params[offset + SALT_INDEX]);
+    byte[] hash = fromHex(params[offset + PBKDF2_INDEX]);
     // Compute the hash of the provided password, using the same salt,
     // iteration count, and hash length
-    byte[] testHash = pbkdf2(password, salt, iterations, hash.length);
+    byte[] testHash = pbkdf2(algorithm, password, salt, iterations, hash.length);
     // Compare the hashes in constant time. The password is correct if
     // both hashes match.
     return slowEquals(hash, testHash);
   }
 
+  /**
+   * Checks if a hash should be replaced with a new one after the password was validated.
+   *
+   * @param hash the hash of the valid password
+   * @param iterations the iteration count that new hashes are created with
+   * @return true if the hash uses a legacy algorithm or less iterations, false if not
+   */
+  public static boolean needsUpgrade(String hash, int iterations) {
+    String[] params = hash.split(":");
+
+    return isLegacy(params) || Integer.parseInt(params[1 + ITERATION_INDEX]) < iterations;
+  }
+
+  private static boolean isLegacy(String[] params) {
+    return !Objects.equals(params[0], PBKDF2_SCHEME);
+  }
+
   /**
    * Compares two byte arrays in length-constant time. This comparison method is used so that
    * password hashes cannot be extracted from an on-line system using a timing attack and then
@@ -147,17 +201,35 @@ public class PasswordHash {
   /**
    * Computes the PBKDF2 hash of a password.
    *
+   * @param algorithm the PBKDF2 variant
    * @param password the password to hash.
    * @param salt the salt
    * @param iterations the iteration count (slowness factor)
    * @param bytes the length of the hash to compute in bytes
    * @return the PBDKF2 hash of the password
    */
-  private static byte[] pbkdf2(char[] password, byte[] salt, int iterations, int bytes)
+  private static byte[] pbkdf2(
+      String algorithm, char[] password, byte[] salt, int iterations, int bytes)
       throws NoSuchAlgorithmException, InvalidKeySpecException {
     PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, bytes * 8);
-    SecretKeyFactory skf = SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
-    return skf.generateSecret(spec).getEncoded();
+    SecretKeyFactory skf = getFactory(algorithm);
+    try {
+      return skf.generateSecret(spec).getEncoded();
+    } finally {
+      spec.clearPassword();
+    }
+  }
+
+  private static SecretKeyFactory getFactory(String algorithm) throws NoSuchAlgorithmException {
+    Map<String, SecretKeyFactory> factories = FACTORIES.get();
+    SecretKeyFactory factory = factories.get(algorithm);
+
+    if (Objects.isNull(factory)) {
+      factory = SecretKeyFactory.getInstance(algorithm);
+      factories.put(algorithm, factory);
+    }
+
+    return factory;
   }
 
   /**
@@ -7,7 +7,7 @@
  */
 package de.ii.xtraplatform.auth.app.external;
 
-import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import de.ii.xtraplatform.auth.app.JwtVerifier;
 import de.ii.xtraplatform.auth.domain.User;
 import de.ii.xtraplatform.auth.domain.UserAuthorizer;
 import de.ii.xtraplatform.dropwizard.domain.AuthProvider;
@@ -17,7 +17,6 @@ import de.ii.xtraplatform.streams.domain.Http;
 import de.ii.xtraplatform.streams.domain.HttpClient;
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.auth.AuthValueFactoryProvider;
-import io.dropwizard.auth.CachingAuthenticator;
 import io.dropwizard.auth.oauth.OAuthCredentialAuthFilter;
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Provides;
@@ -46,31 +45,26 @@ public class ExternalBearerAuthProvider implements AuthProvider<User> {
 
   @Override
   public AuthDynamicFeature getAuthDynamicFeature() {
-    TokenAuthenticator tokenAuthenticator = new TokenAuthenticator(authConfig, httpClient);
-
-    CachingAuthenticator<String, User> cachingAuthenticator =
-        new CachingAuthenticator<String, User>(
-            dropwizard.getEnvironment().metrics(),
-            tokenAuthenticator,
-            CaffeineSpec.parse("maximumSize=10000, expireAfterAccess=10m"));
+    JwtVerifier jwtVerifier = new JwtVerifier(authConfig);
+    jwtVerifier.registerMetrics(dropwizard.getEnvironment().metrics(), "external");
+    // caches verified tokens and user infos itself, expiring with the token or the configured ttl
+    TokenAuthenticator tokenAuthenticator =
+        new TokenAuthenticator(
+            authConfig, httpClient, jwtVerifier, dropwizard.getEnvironment().metrics());
 
     // TODO OAuthEdaAuthFIlter extends OAuthCredentialAuthFilter
     // override filter, get stuff from ContainerRequestContext
 
     OAuthCredentialAuthFilter<User> authFilter =
         new OAuthCredentialAuthFilter.Builder<User>()
-            .setAuthenticator(cachingAuthenticator)
+            .setAuthenticator(tokenAuthenticator)
             .setAuthorizer(new UserAuthorizer())
             .setPrefix("Bearer")
             .buildAuthFilter();
 
     if (!authConfig.getExternalDynamicAuthorizationEndpoint.isEmpty()) {
       return new AuthDynamicFeature(
-          new ExternalDynamicAuthFilter<>(
-              authConfig.getExternalDynamicAuthorizationEndpoint,
-              authConfig.getPostProcessingEndpoint,
-              httpClient,
-              authFilter));
+          new ExternalDynamicAuthFilter<>(authConfig, httpClient, authFilter));
     }
 
     return new AuthDynamicFeature(authFilter);
@@ -12,23 +12,38 @@ import akka.http.javadsl.model.ContentTypes;
 import akka.http.javadsl.model.HttpCharsets;
 import akka.http.javadsl.model.MediaTypes;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.ii.xtraplatform.runtime.domain.AuthConfig;
 import de.ii.xtraplatform.streams.domain.HttpClient;
 import io.dropwizard.auth.AuthFilter;
 import io.dropwizard.auth.DefaultUnauthorizedHandler;
 import io.dropwizard.auth.oauth.OAuthCredentialAuthFilter;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.Principal;
+import java.time.Duration;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
-import org.glassfish.jersey.message.internal.ReaderWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,22 +57,48 @@ public class ExternalDynamicAuthFilter<P extends Principal> extends AuthFilter<S
       ContentTypes.create(MediaTypes.applicationWithFixedCharset("geo+json", HttpCharsets.UTF_8));
   private static final ObjectMapper JSON = new ObjectMapper();
 
+  private static final int MAX_DECISIONS = 10_000;
+  private static final int MAX_PARALLEL_REQUESTS = 32;
+  private static final int MAX_QUEUED_REQUESTS = 128;
+
   private final String edaUrl;
   private final String ppUrl;
   private final HttpClient httpClient;
   private final OAuthCredentialAuthFilter<P> delegate;
+  private final Duration timeout;
+  private final int maxBodySize;
+  private final Cache<String, Boolean> decisions;
+  private final ThreadPoolExecutor executorService;
 
   ExternalDynamicAuthFilter(
-      String edaUrl, String ppUrl, HttpClient httpClient, OAuthCredentialAuthFilter<P> delegate) {
+      AuthConfig authConfig, HttpClient httpClient, OAuthCredentialAuthFilter<P> delegate) {
     super();
     this.realm = "ldproxy";
     this.prefix = "Bearer";
     this.unauthorizedHandler = new DefaultUnauthorizedHandler();
 
-    this.edaUrl = edaUrl;
-    this.ppUrl = ppUrl;
+    this.edaUrl = authConfig.getExternalDynamicAuthorizationEndpoint;
+    this.ppUrl = authConfig.getPostProcessingEndpoint;
     this.httpClient = httpClient;
     this.delegate = delegate;
+    this.timeout = Duration.ofMillis(authConfig.externalDynamicAuthorizationTimeout);
+    this.maxBodySize = authConfig.externalDynamicAuthorizationMaxBodySize;
+    this.decisions =
+        Caffeine.newBuilder()
+            .maximumSize(MAX_DECISIONS)
+            .expireAfterWrite(authConfig.externalDynamicAuthorizationCacheSeconds, TimeUnit.SECONDS)
+            .build();
+    // requests beyond the queue are rejected and denied instead of piling up threads
+    this.executorService =
+        new ThreadPoolExecutor(
+            MAX_PARALLEL_REQUESTS,
+            MAX_PARALLEL_REQUESTS,
+            60,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED_REQUESTS),
+            new ThreadFactoryBuilder().setNameFormat("auth.external-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.AbortPolicy());
+    executorService.allowCoreThreadTimeOut(true);
   }
 
   // TODO
@@ -76,6 +117,7 @@ public class ExternalDynamicAuthFilter<P extends Principal> extends AuthFilter<S
       int serviceIndex = pathSegments.indexOf("services") + 1;
 
       if (serviceIndex > 0 && pathSegments.size() > 1) {
+        byte[] body = getEntityBody(requestContext);
         boolean authorized =
             isAuthorized(
                 requestContext.getSecurityContext().getUserPrincipal().getName(),
@@ -83,7 +125,7 @@ public class ExternalDynamicAuthFilter<P extends Principal> extends AuthFilter<S
                 "/"
                     + Joiner.on('/')
                         .join(pathSegments.subList(serviceIndex + 1, pathSegments.size())),
-                getEntityBody(requestContext));
+                body);
 
         if (!authorized) {
           // reset security context, because we use @PermitAll and then decide based on Principal
@@ -94,7 +136,7 @@ public class ExternalDynamicAuthFilter<P extends Principal> extends AuthFilter<S
         }
 
         if (!ppUrl.isEmpty()) {
-          postProcess(requestContext, getEntityBody(requestContext));
+          postProcess(requestContext, body);
         }
       }
     }
@@ -104,7 +146,8 @@ public class ExternalDynamicAuthFilter<P extends Principal> extends AuthFilter<S
     if (requestContext.getMethod().equals("POST") || requestContext.getMethod().equals("PUT")) {
       try {
 
-        InputStream processedBody = httpClient.postAsInputStream(ppUrl, body, GEOJSON);
+        InputStream processedBody =
+            withTimeout(() -> httpClient.postAsInputStream(ppUrl, body, GEOJSON, timeout));
 
         putEntityBody(requestContext, processedBody);
 
@@ -115,7 +158,39 @@ public class ExternalDynamicAuthFilter<P extends Principal> extends AuthFilter<S
     }
   }
 
+  // the decision only depends on the request, so it is reused for identical requests
   private boolean isAuthorized(String user, String method, String path, byte[] body) {
+    String key =
+        Joiner.on('\n').join(user, method, path, Hashing.sha256().hashBytes(body).toString());
+    Boolean decision = decisions.getIfPresent(key);
+
+    if (Objects.nonNull(decision)) {
+      return decision;
+    }
+
+    try {
+      boolean allowed = withTimeout(() -> requestDecision(user, method, path, body));
+      decisions.put(key, allowed);
+
+      return allowed;
+
+    } catch (TimeoutException e) {
+      LOGGER.warn(
+          "Authorization request to '{}' timed out after {}ms, request is denied",
+          edaUrl,
+          timeout.toMillis());
+    } catch (RejectedExecutionException e) {
+      LOGGER.warn(
+          "Authorization request to '{}' rejected, too many pending requests, request is denied",
+          edaUrl);
+    } catch (Throwable e) {
+      // ignore
+    }
+
+    return false;
+  }
+
+  private boolean requestDecision(String user, String method, String path, byte[] body) {
 
     // LOGGER.debug("EDA {} {} {} {}", user, method, path, new String(body,
     // Charset.forName("utf-8")));
@@ -128,28 +203,45 @@ public class ExternalDynamicAuthFilter<P extends Principal> extends AuthFilter<S
       // LOGGER.debug("XACML {}", JSON.writerWithDefaultPrettyPrinter()
       //                             .writeValueAsString(xacmlRequest1));
 
-      InputStream response = httpClient.postAsInputStream(edaUrl, xacmlRequest, XACML);
+      InputStream response = httpClient.postAsInputStream(edaUrl, xacmlRequest, XACML, timeout);
 
       XacmlResponse xacmlResponse = JSON.readValue(response, XacmlResponse.class);
 
       return xacmlResponse.isAllowed();
 
-    } catch (Throwable e) {
-      // ignore
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
     }
+  }
 
-    return false;
+  // the client call itself times out and frees the thread, waiting here is only a fallback
+  private <T> T withTimeout(Supplier<T> call) throws Exception {
+    CompletableFuture<T> future = CompletableFuture.supplyAsync(call, executorService);
+
+    try {
+      return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof TimeoutException) {
+        throw (TimeoutException) e.getCause();
+      }
+      throw e;
+    }
   }
 
+  // read once with an upper bound, the buffer is then handed on to the resource
   private byte[] getEntityBody(ContainerRequestContext requestContext) {
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (requestContext.getLength() > maxBodySize) {
+      throw new WebApplicationException(Response.Status.REQUEST_ENTITY_TOO_LARGE);
+    }
+
     InputStream in = requestContext.getEntityStream();
 
     // final StringBuilder b = new StringBuilder();
     try {
-      ReaderWriter.writeTo(in, out);
-
-      byte[] requestEntity = out.toByteArray();
+      byte[] requestEntity = ByteStreams.toByteArray(ByteStreams.limit(in, maxBodySize + 1L));
+      if (requestEntity.length > maxBodySize) {
+        throw new WebApplicationException(Response.Status.REQUEST_ENTITY_TOO_LARGE);
+      }
       /*if (requestEntity.length == 0) {
           b.append("")
            .append("\n");
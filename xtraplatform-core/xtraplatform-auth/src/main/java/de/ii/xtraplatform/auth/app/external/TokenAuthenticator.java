@@ -7,8 +7,15 @@
  */
 package de.ii.xtraplatform.auth.app.external;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import de.ii.xtraplatform.auth.app.JwtVerifier;
 import de.ii.xtraplatform.auth.domain.ImmutableUser;
 import de.ii.xtraplatform.auth.domain.Role;
 import de.ii.xtraplatform.auth.domain.User;
@@ -17,10 +24,13 @@ import de.ii.xtraplatform.streams.domain.HttpClient;
 import io.dropwizard.auth.AuthenticationException;
 import io.dropwizard.auth.Authenticator;
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,13 +41,35 @@ public class TokenAuthenticator implements Authenticator<String, User> {
   private static final ObjectMapper MAPPER = new ObjectMapper();
   private static final TypeReference<Map<String, String>> TYPE_REF =
       new TypeReference<Map<String, String>>() {};
+  private static final int USER_INFO_CACHE_SIZE = 10_000;
 
   private final AuthConfig authConfig;
   private final HttpClient httpClient;
+  private final JwtVerifier verifier;
+  private final Cache<String, Optional<User>> userInfoCache;
+  private final Timer userInfoTimer;
 
-  TokenAuthenticator(AuthConfig authConfig, HttpClient httpClient) {
+  TokenAuthenticator(
+      AuthConfig authConfig,
+      HttpClient httpClient,
+      JwtVerifier verifier,
+      MetricRegistry metricRegistry) {
     this.authConfig = authConfig;
     this.httpClient = httpClient;
+    this.verifier = verifier;
+    this.userInfoCache =
+        Caffeine.newBuilder()
+            .maximumSize(USER_INFO_CACHE_SIZE)
+            .expireAfter(
+                new UserInfoExpiry(
+                    authConfig.userInfoCacheSeconds, authConfig.userInfoNegativeCacheSeconds))
+            .recordStats()
+            .build();
+    this.userInfoTimer =
+        metricRegistry.timer(MetricRegistry.name(TokenAuthenticator.class, "userinfo"));
+
+    registerGauge(metricRegistry, "hits", () -> userInfoCache.stats().hitCount());
+    registerGauge(metricRegistry, "misses", () -> userInfoCache.stats().missCount());
   }
 
   @Override
@@ -47,8 +79,7 @@ public class TokenAuthenticator implements Authenticator<String, User> {
         if (authConfig.isJwt()) {
           // validate
           // parse
-          Claims claimsJws =
-              Jwts.parser().setSigningKey(authConfig.jwtSigningKey).parseClaimsJws(token).getBody();
+          Claims claimsJws = verifier.verify(token);
 
           return Optional.of(
               ImmutableUser.builder()
@@ -60,21 +91,7 @@ public class TokenAuthenticator implements Authenticator<String, User> {
                               .orElse("USER")))
                   .build());
         } else {
-          // validate/exchange
-          // parse
-          String url = authConfig.getUserInfoEndpoint.replace("{{token}}", token);
-          InputStream response = httpClient.getAsInputStream(url);
-
-          Map<String, String> userInfo = MAPPER.readValue(response, TYPE_REF);
-
-          return Optional.of(
-              ImmutableUser.builder()
-                  .name(userInfo.get(authConfig.getUserNameKey))
-                  .role(
-                      Role.fromString(
-                          Optional.ofNullable(userInfo.get(authConfig.getUserRoleKey))
-                              .orElse("USER")))
-                  .build());
+          return userInfoCache.get(JwtVerifier.digest(token), ignore -> requestUserInfo(token));
         }
       } catch (Throwable e) {
         if (LOGGER.isTraceEnabled()) {
@@ -85,4 +102,70 @@ public class TokenAuthenticator implements Authenticator<String, User> {
 
     return Optional.empty();
   }
+
+  // concurrent lookups for the same token wait for the first one instead of calling the endpoint;
+  // the http client does not provide the response status, so only a user info without a subject
+  // is a rejection that is cached; transport and parsing errors are thrown and not cached
+  private Optional<User> requestUserInfo(String token) {
+    String url = authConfig.getUserInfoEndpoint.replace("{{token}}", token);
+
+    // validate/exchange
+    // parse
+    try (Timer.Context ignored = userInfoTimer.time();
+        InputStream response = httpClient.getAsInputStream(url)) {
+      Map<String, String> userInfo = MAPPER.readValue(response, TYPE_REF);
+      String name = userInfo.get(authConfig.getUserNameKey);
+
+      if (Objects.isNull(name) || name.isEmpty()) {
+        return Optional.empty();
+      }
+
+      return Optional.of(
+          ImmutableUser.builder()
+              .name(name)
+              .role(
+                  Role.fromString(
+                      Optional.ofNullable(userInfo.get(authConfig.getUserRoleKey))
+                          .orElse("USER")))
+              .build());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error requesting user info", e);
+    }
+  }
+
+  private static void registerGauge(MetricRegistry registry, String name, Gauge<Long> gauge) {
+    String fullName = MetricRegistry.name(TokenAuthenticator.class, "userinfo", name);
+
+    if (!registry.getNames().contains(fullName)) {
+      registry.register(fullName, gauge);
+    }
+  }
+
+  private static class UserInfoExpiry implements Expiry<String, Optional<User>> {
+
+    private final long ttl;
+    private final long negativeTtl;
+
+    private UserInfoExpiry(int seconds, int negativeSeconds) {
+      this.ttl = TimeUnit.SECONDS.toNanos(seconds);
+      this.negativeTtl = TimeUnit.SECONDS.toNanos(negativeSeconds);
+    }
+
+    @Override
+    public long expireAfterCreate(String key, Optional<User> user, long currentTime) {
+      return user.isPresent() ? ttl : negativeTtl;
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String key, Optional<User> user, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, user, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(
+        String key, Optional<User> user, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
 }
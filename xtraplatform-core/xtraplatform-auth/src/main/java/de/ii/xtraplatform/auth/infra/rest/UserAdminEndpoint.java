@@ -12,6 +12,7 @@ import de.ii.xtraplatform.auth.app.PasswordHash;
 import de.ii.xtraplatform.auth.app.User;
 import de.ii.xtraplatform.auth.app.User.UserData;
 import de.ii.xtraplatform.auth.domain.Role;
+import de.ii.xtraplatform.dropwizard.domain.ConfigurationProvider;
 import de.ii.xtraplatform.dropwizard.domain.Endpoint;
 import de.ii.xtraplatform.dropwizard.domain.MediaTypeCharset;
 import de.ii.xtraplatform.runtime.domain.LogContext;
@@ -22,6 +23,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -57,9 +59,16 @@ public class UserAdminEndpoint implements Endpoint {
   private static final Logger LOGGER = LoggerFactory.getLogger(UserAdminEndpoint.class);
 
   private final EntityDataStore<UserData> userRepository;
+  private final int passwordHashIterations;
 
-  UserAdminEndpoint(@Requires EntityDataStore<EntityData> entityRepository) {
+  UserAdminEndpoint(
+      @Requires ConfigurationProvider configurationProvider,
+      @Requires EntityDataStore<EntityData> entityRepository) {
     this.userRepository = entityRepository.forType(User.UserData.class);
+    this.passwordHashIterations =
+        Optional.ofNullable(configurationProvider.getConfiguration().auth)
+            .map(authConfig -> authConfig.passwordHashIterations)
+            .orElse(PasswordHash.PBKDF2_ITERATIONS);
   }
 
   @GET
@@ -90,7 +99,7 @@ public class UserAdminEndpoint implements Endpoint {
       User.UserData userData =
           new ImmutableUserData.Builder()
               .id(request.get("id"))
-              .password(PasswordHash.createHash(request.get("password")))
+              .password(PasswordHash.createHash(request.get("password"), passwordHashIterations))
               .role(Role.fromString(request.get("role")))
               .build();
 
@@ -130,7 +139,7 @@ public class UserAdminEndpoint implements Endpoint {
     User.UserData updated =
         new ImmutableUserData.Builder()
             .from(userData)
-            .password(PasswordHash.createHash(request.get("newPassword")))
+            .password(PasswordHash.createHash(request.get("newPassword"), passwordHashIterations))
             .passwordExpiresAt(OptionalLong.empty())
             .build();
 
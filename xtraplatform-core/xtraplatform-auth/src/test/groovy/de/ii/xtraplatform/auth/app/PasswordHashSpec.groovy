@@ -0,0 +1,35 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.auth.app
+
+import spock.lang.Specification
+
+class PasswordHashSpec extends Specification {
+
+    static final String LEGACY_HASH = "1000:000102030405060708090a0b0c0d0e0f1011121314151617:5c2fcbca88f25c55e7fc6ebd67cf81ea05ccf17f04c3b0c6"
+
+    def 'Test legacy hash validation'() {
+        expect:
+        PasswordHash.validatePassword("legacyPassword", LEGACY_HASH)
+        !PasswordHash.validatePassword("password", LEGACY_HASH)
+        PasswordHash.needsUpgrade(LEGACY_HASH, 1000)
+    }
+
+    def 'Test hash validation'() {
+        given:
+        String hash = PasswordHash.createHash("password", 2000)
+
+        expect:
+        hash.startsWith(PasswordHash.PBKDF2_SCHEME + ":2000:")
+        PasswordHash.validatePassword("password", hash)
+        !PasswordHash.validatePassword("legacyPassword", hash)
+        !PasswordHash.needsUpgrade(hash, 2000)
+        PasswordHash.needsUpgrade(hash, 4000)
+    }
+
+}
@@ -14,6 +14,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Objects;
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 /** @author zahnen */
@@ -46,9 +47,30 @@ public class AuthConfig {
 
   @Valid @NotNull @JsonProperty public String getUserInfoEndpoint = "";
 
+  // seconds to reuse the user info for a token, failed lookups are reused for the second value
+  @Valid @Min(0) @JsonProperty public int userInfoCacheSeconds = 300;
+
+  @Valid @Min(0) @JsonProperty public int userInfoNegativeCacheSeconds = 30;
+
   @Valid @NotNull @JsonProperty public String getConnectionInfoEndpoint = "";
 
   @Valid @NotNull @JsonProperty public String getExternalDynamicAuthorizationEndpoint = "";
 
+  // milliseconds to wait for the authorization and post-processing endpoints, denied on timeout
+  @Valid @Min(1) @JsonProperty public int externalDynamicAuthorizationTimeout = 10000;
+
+  // seconds to reuse a decision for the same user, method, path and body, 0 disables the cache
+  @Valid @Min(0) @JsonProperty public int externalDynamicAuthorizationCacheSeconds = 60;
+
+  // larger request bodies are rejected instead of being buffered for the authorization request
+  @Valid @Min(0) @JsonProperty
+  public int externalDynamicAuthorizationMaxBodySize = 16 * 1024 * 1024;
+
   @Valid @NotNull @JsonProperty public String getPostProcessingEndpoint = "";
+
+  // PBKDF2-SHA256 iterations for new passwords, weaker hashes are replaced on the next login
+  @Valid @Min(1) @JsonProperty public int passwordHashIterations = 310000;
+
+  // seconds to reuse a successful password check for the same user and password, 0 disables it
+  @Valid @Min(0) @JsonProperty public int passwordVerificationCacheSeconds = 60;
 }
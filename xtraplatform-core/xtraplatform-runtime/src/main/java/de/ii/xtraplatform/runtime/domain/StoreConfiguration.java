@@ -11,6 +11,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableList;
 import java.util.List;
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import org.hibernate.validator.constraints.NotEmpty;
 
@@ -22,16 +23,61 @@ public class StoreConfiguration {
     DISTRIBUTED,
   }
 
+  public enum FsyncPolicy {
+    ALWAYS,
+    BATCHED,
+    NEVER,
+  }
+
+  public enum DecodingMode {
+    EAGER,
+    LAZY,
+    LAZY_PREWARM,
+  }
+
   @Valid @NotNull @JsonProperty public StoreMode mode = StoreMode.READ_WRITE;
 
   @Valid @NotNull @JsonProperty public String location = "store";
 
   @Valid @NotNull @JsonProperty public List<String> additionalLocations = ImmutableList.of();
 
+  // force written files to disk, BATCHED syncs directories only once per batch of writes,
+  // a single write is a batch of its own
+  @Valid @NotNull @JsonProperty public FsyncPolicy fsync = FsyncPolicy.NEVER;
+
   @Valid @NotNull @JsonProperty public boolean watch = false;
 
+  // collect changes until the store is quiet for the given milliseconds, but at most for ten times
+  // that, then reload only the affected entities without throttling; 0 reloads every change
+  // immediately
+  @Valid @Min(0) @JsonProperty public int watchDebounce = 0;
+
   @Valid @NotNull @JsonProperty public boolean secured = false;
 
+  // read all store files with a single directory walk per location on a bounded thread pool
+  @Valid @NotNull @JsonProperty public boolean parallelReplay = false;
+
+  @Valid @Min(1) @JsonProperty
+  public int replayThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  // process events of independent event and entity types concurrently, 1 processes one at a time
+  @Valid @Min(1) @JsonProperty public int dispatchThreads = 1;
+
+  // create or reload entities that do not depend on each other concurrently, 1 keeps the order
+  @Valid @Min(1) @JsonProperty public int entityThreads = 1;
+
+  // run entity startups that may block, e.g. on a database, on at most this many threads, further
+  // startups wait in a queue
+  @Valid @Min(1) @JsonProperty
+  public int startupThreads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+  // restore decoded values for unchanged files from the snapshot of the last replay
+  @Valid @NotNull @JsonProperty public boolean snapshots = false;
+
+  // keep replayed values as raw payload and decode them on first access, LAZY_PREWARM decodes
+  // the remaining ones in the background once the replay is finished
+  @Valid @NotNull @JsonProperty public DecodingMode decoding = DecodingMode.EAGER;
+
   // defaultValuesPathPattern
   @Valid @NotNull @JsonProperty
   public List<String> defaultValuesPathPatterns =
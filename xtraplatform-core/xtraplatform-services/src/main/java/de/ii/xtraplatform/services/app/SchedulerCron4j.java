@@ -13,6 +13,7 @@ import de.ii.xtraplatform.services.domain.Task;
 import de.ii.xtraplatform.services.domain.TaskQueue;
 import de.ii.xtraplatform.services.domain.TaskStatus;
 import it.sauronsoftware.cron4j.SchedulerListener;
+import it.sauronsoftware.cron4j.SchedulingPattern;
 import it.sauronsoftware.cron4j.TaskExecutor;
 import java.text.DecimalFormat;
 import java.time.Duration;
@@ -103,6 +104,20 @@ public class SchedulerCron4j implements Scheduler {
     return new TaskStatusCron4j(task.getId(), task.getLabel(), taskExecutor);
   }
 
+  @Override
+  public String schedule(String pattern, Runnable runnable) {
+    if (!SchedulingPattern.validate(pattern)) {
+      throw new IllegalArgumentException("Invalid scheduling pattern: " + pattern);
+    }
+
+    return scheduler.schedule(pattern, runnable);
+  }
+
+  @Override
+  public void deschedule(String id) {
+    scheduler.deschedule(id);
+  }
+
   @Override
   public TaskQueue createQueue(String id) {
     return new TaskQueue() {
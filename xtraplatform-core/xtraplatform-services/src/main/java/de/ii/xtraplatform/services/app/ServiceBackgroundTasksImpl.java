@@ -13,6 +13,7 @@ import de.ii.xtraplatform.services.domain.Scheduler;
 import de.ii.xtraplatform.services.domain.Service;
 import de.ii.xtraplatform.services.domain.ServiceBackgroundTask;
 import de.ii.xtraplatform.services.domain.ServiceBackgroundTasks;
+import de.ii.xtraplatform.services.domain.Task;
 import de.ii.xtraplatform.services.domain.TaskQueue;
 import de.ii.xtraplatform.services.domain.TaskStatus;
 import de.ii.xtraplatform.store.domain.entities.EntityRegistry;
@@ -21,6 +22,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Context;
 import org.apache.felix.ipojo.annotations.Instantiate;
@@ -47,11 +49,14 @@ public class ServiceBackgroundTasksImpl
   private static final Logger LOGGER = LoggerFactory.getLogger(ServiceBackgroundTasksImpl.class);
   static final String SERVICE_BACKGROUND_TASK =
       "de.ii.xtraplatform.services.domain.ServiceBackgroundTask";
+  // spreads out the runs of services that use the same pattern
+  private static final long MAX_JITTER = 30_000;
 
   private final Registry.State<ServiceBackgroundTask<? extends Service>> tasks;
   private final Scheduler scheduler;
   private final TaskQueue commonQueue;
   private final Map<String, TaskQueue> taskQueues;
+  private final Map<String, Map<String, PeriodicTask>> periodicTasks;
 
   ServiceBackgroundTasksImpl(
       @Context BundleContext context,
@@ -62,6 +67,7 @@ public class ServiceBackgroundTasksImpl
     this.commonQueue = scheduler.createQueue(ServiceBackgroundTasks.COMMON_QUEUE);
     this.taskQueues = new ConcurrentHashMap<>();
     taskQueues.put(COMMON_QUEUE, commonQueue);
+    this.periodicTasks = new ConcurrentHashMap<>();
     entityRegistry.addEntityListener(Service.class, this::onServiceStart, true);
     entityRegistry.addEntityGoneListener(Service.class, this::onServiceStop);
   }
@@ -98,10 +104,16 @@ public class ServiceBackgroundTasksImpl
     if (LOGGER.isTraceEnabled()) {
       LOGGER.trace("Stopping background tasks for service '{}'", service.getId());
     }
+    Optional.ofNullable(periodicTasks.remove(service.getId()))
+        .ifPresent(scheduled -> scheduled.values().forEach(PeriodicTask::cancel));
     getCurrentTaskForService(service.getId()).ifPresent(TaskStatus::stop);
-    commonQueue.getFutureTasks().stream()
-        .filter(task -> Objects.equals(task.getId(), service.getId()))
-        .forEach(commonQueue::remove);
+    taskQueues
+        .values()
+        .forEach(
+            queue ->
+                queue.getFutureTasks().stream()
+                    .filter(task -> Objects.equals(task.getId(), service.getId()))
+                    .forEach(queue::remove));
   }
 
   private <T extends Service, U extends Service> void scheduleIfMatching(
@@ -112,17 +124,47 @@ public class ServiceBackgroundTasksImpl
     }
   }
 
-  // TODO
   private <T extends Service> void schedule(T service, ServiceBackgroundTask<T> task) {
     if (task.runOnStart(service)) {
 
       // LOGGER.debug("RUNNING TASK {} FOR {}", task.getLabel(), service.getId());
       taskQueues.get(task.getQueue()).launch(task.getTask(service, task.getLabel()), 5000);
     }
-    if (task.runPeriodic(service).isPresent()) {
-      // LOGGER.debug("SCHEDULE TASK {} FOR {} WITH {}", task.getLabel(), service.getId(),
-      // task.runPeriodic(service).get());
-    }
+    task.runPeriodic(service).ifPresent(pattern -> schedulePeriodic(service, task, pattern));
+  }
+
+  // at most one schedule per service and task, runs are de-duplicated by the queue
+  private <T extends Service> void schedulePeriodic(
+      T service, ServiceBackgroundTask<T> task, String pattern) {
+    periodicTasks
+        .computeIfAbsent(service.getId(), ignore -> new ConcurrentHashMap<>())
+        .computeIfAbsent(
+            task.getLabel(),
+            ignore -> {
+              PeriodicTask periodicTask =
+                  new PeriodicTask(
+                      taskQueues.get(task.getQueue()), task.getTask(service, task.getLabel()));
+              try {
+                periodicTask.id = scheduler.schedule(pattern, periodicTask);
+              } catch (IllegalArgumentException | UnsupportedOperationException e) {
+                LOGGER.error(
+                    "Could not schedule {} for service '{}': {}",
+                    task.getLabel(),
+                    service.getId(),
+                    e.getMessage());
+                return null;
+              }
+
+              if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(
+                    "Scheduled {} for service '{}' with '{}'",
+                    task.getLabel(),
+                    service.getId(),
+                    pattern);
+              }
+
+              return periodicTask;
+            });
   }
 
   @Override
@@ -147,4 +189,37 @@ public class ServiceBackgroundTasksImpl
   public State<ServiceBackgroundTask<?>> getRegistryState() {
     return tasks;
   }
+
+  private class PeriodicTask implements Runnable {
+
+    private final TaskQueue queue;
+    private final Task task;
+    private volatile String id;
+    private volatile boolean cancelled;
+
+    private PeriodicTask(TaskQueue queue, Task task) {
+      this.queue = queue;
+      this.task = task;
+    }
+
+    // runs in a thread of its own, so waiting does not block other schedules
+    @Override
+    public void run() {
+      try {
+        Thread.sleep(ThreadLocalRandom.current().nextLong(MAX_JITTER));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      if (!cancelled) {
+        queue.launch(task);
+      }
+    }
+
+    private void cancel() {
+      this.cancelled = true;
+      scheduler.deschedule(id);
+    }
+  }
 }
@@ -12,4 +12,17 @@ public interface Scheduler {
   TaskStatus launch(Task task);
 
   TaskQueue createQueue(String id);
+
+  /**
+   * Runs the given runnable whenever the cron pattern matches, e.g. {@code 0 * * * *} for every
+   * hour. Throws an {@link IllegalArgumentException} for invalid patterns and an {@link
+   * UnsupportedOperationException} if the scheduler does not support periodic runs.
+   *
+   * @return the id needed to deschedule the runnable
+   */
+  default String schedule(String pattern, Runnable runnable) {
+    throw new UnsupportedOperationException("Periodic runs are not supported");
+  }
+
+  default void deschedule(String id) {}
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.app;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.ii.xtraplatform.runtime.domain.LogContext;
+import de.ii.xtraplatform.store.domain.EntityEvent;
+import de.ii.xtraplatform.store.domain.EventStoreSubscriber;
+import de.ii.xtraplatform.store.domain.entities.EntityDataDefaultsStore;
+import de.ii.xtraplatform.streams.domain.Event;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands events to subscribers. Without parallelism, only one event is processed at a time.
+ * Otherwise events are assigned to lanes per event type and entity type. Events in the same lane
+ * are processed in order, events in independent lanes concurrently. A lane only proceeds when all
+ * events already dispatched to the lanes it depends on are processed.
+ */
+public class EventDispatcher {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EventDispatcher.class);
+
+  // event type -> event types it depends on
+  static final Map<String, List<String>> EVENT_TYPE_DEPENDENCIES =
+      ImmutableMap.of(
+          "entities",
+          ImmutableList.of(EntityDataDefaultsStore.EVENT_TYPE),
+          "overrides",
+          ImmutableList.of(EntityDataDefaultsStore.EVENT_TYPE, "entities"));
+
+  // entity type -> entity types it depends on
+  public static final Map<String, List<String>> ENTITY_TYPE_DEPENDENCIES =
+      ImmutableMap.of(
+          "providers",
+          ImmutableList.of("codelists"),
+          "services",
+          ImmutableList.of("codelists", "providers"));
+
+  private final boolean isParallel;
+  private final ExecutorService executorService;
+  private final Map<String, CompletableFuture<Void>> lanes;
+
+  EventDispatcher(int parallelism) {
+    this.isParallel = parallelism > 1;
+    this.executorService =
+        isParallel
+            ? MoreExecutors.getExitingExecutorService(
+                (ThreadPoolExecutor)
+                    Executors.newFixedThreadPool(
+                        parallelism,
+                        new ThreadFactoryBuilder().setNameFormat("store.dispatch-%d").build()))
+            : null;
+    this.lanes = new HashMap<>();
+  }
+
+  /** Called from the stream of the event type, so events of the same type arrive in order. */
+  public void dispatch(EventStoreSubscriber subscriber, EntityEvent event) {
+    if (!isParallel) {
+      synchronized (this) {
+        subscriber.onEmit(event);
+      }
+      return;
+    }
+
+    String entityType = getEntityType(event);
+    String lane = getLane(event.type(), entityType);
+
+    synchronized (this) {
+      List<CompletableFuture<Void>> predecessors = new ArrayList<>();
+      predecessors.add(lanes.getOrDefault(lane, CompletableFuture.completedFuture(null)));
+      for (String dependency : getDependencies(event.type(), entityType)) {
+        if (lanes.containsKey(dependency)) {
+          predecessors.add(lanes.get(dependency));
+        }
+      }
+
+      lanes.put(
+          lane,
+          CompletableFuture.allOf(predecessors.toArray(new CompletableFuture[0]))
+              .handle((ignore, throwable) -> null)
+              .thenRunAsync(() -> emit(subscriber, event), executorService));
+    }
+  }
+
+  /** For state changes and reloads, waits until all dispatched events are processed. */
+  public void dispatchBarrier(EventStoreSubscriber subscriber, Event event) {
+    if (!isParallel) {
+      synchronized (this) {
+        subscriber.onEmit(event);
+      }
+      return;
+    }
+
+    awaitDispatched();
+    subscriber.onEmit(event);
+  }
+
+  public void awaitDispatched() {
+    if (!isParallel) {
+      return;
+    }
+
+    CompletableFuture<Void> all;
+    synchronized (this) {
+      all = CompletableFuture.allOf(lanes.values().toArray(new CompletableFuture[0]));
+    }
+    all.handle((ignore, throwable) -> null).join();
+  }
+
+  private void emit(EventStoreSubscriber subscriber, EntityEvent event) {
+    try {
+      subscriber.onEmit(event);
+    } catch (Throwable e) {
+      LogContext.error(LOGGER, e, "Cannot dispatch event '{}'", event.asPath());
+    }
+  }
+
+  static String getEntityType(EntityEvent event) {
+    return event.identifier().path().isEmpty() ? "" : event.identifier().path().get(0);
+  }
+
+  // event types outside of the graph have a single lane, so they keep their order
+  static String getLane(String eventType, String entityType) {
+    if (!EVENT_TYPE_DEPENDENCIES.containsKey(eventType)) {
+      return eventType;
+    }
+
+    return eventType + "/" + entityType;
+  }
+
+  static List<String> getDependencies(String eventType, String entityType) {
+    List<String> dependencies = new ArrayList<>();
+
+    for (String eventTypeDependency :
+        EVENT_TYPE_DEPENDENCIES.getOrDefault(eventType, ImmutableList.of())) {
+      dependencies.add(getLane(eventTypeDependency, entityType));
+    }
+    if (EVENT_TYPE_DEPENDENCIES.containsKey(eventType)) {
+      for (String entityTypeDependency :
+          ENTITY_TYPE_DEPENDENCIES.getOrDefault(entityType, ImmutableList.of())) {
+        dependencies.add(getLane(eventType, entityTypeDependency));
+      }
+    }
+
+    return dependencies;
+  }
+}
@@ -10,13 +10,18 @@ package de.ii.xtraplatform.store.app;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import de.ii.xtraplatform.store.domain.EntityEvent;
 import de.ii.xtraplatform.store.domain.Identifier;
 import de.ii.xtraplatform.store.domain.ImmutableIdentifier;
 import de.ii.xtraplatform.store.domain.ImmutableReplayEvent;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -44,6 +49,7 @@ public class EventPaths {
   private final Pattern mainPathPatternRead;
   private final String mainPathPatternWrite;
   private final List<Pattern> overridePathPatternsRead;
+  private final List<CompiledPattern> compiledPatterns;
   private final List<String> overridePathPatternsWrite;
   private final String savePathPattern;
 
@@ -71,6 +77,10 @@ public class EventPaths {
             .collect(Collectors.toList());
     ;
     this.savePathPattern = overridePathPatternsWrite.get(overridePathPatternsWrite.size() - 1);
+    this.compiledPatterns =
+        Stream.concat(Stream.of(mainPathPattern), overridePathPatterns.stream())
+            .map(pattern -> new CompiledPattern(pattern, pathToPattern(pattern, pathAdjuster)))
+            .collect(Collectors.toList());
 
     if (LOGGER.isTraceEnabled()) {
       LOGGER.trace(
@@ -105,12 +115,48 @@ public class EventPaths {
                 + (Objects.nonNull(format) ? "." + format.toLowerCase() : "")));
   }
 
+  /**
+   * Classifies the path against all patterns in one pass. Patterns whose segment count or literal
+   * segments do not fit are skipped without running the regex, the payload is read at most once.
+   */
+  public List<EntityEvent> pathToEvents(
+      Path path, Function<Path, byte[]> readPayload, boolean isAdditional) {
+    Path relativePath = rootPath.relativize(path);
+    String relativePathString = relativePath.toString();
+    Supplier<byte[]> payload = Suppliers.memoize(() -> readPayload.apply(path));
+    List<EntityEvent> events = new ArrayList<>(1);
+
+    for (CompiledPattern compiledPattern : compiledPatterns) {
+      if (!compiledPattern.mayMatch(relativePath)) {
+        continue;
+      }
+
+      EntityEvent event =
+          toEvent(
+              compiledPattern.pattern.matcher(relativePathString),
+              path,
+              ignore -> payload.get(),
+              isAdditional);
+
+      if (Objects.nonNull(event)) {
+        events.add(event);
+      }
+    }
+
+    return events;
+  }
+
   public EntityEvent pathToEvent(
       Pattern pathPattern, Path path, Function<Path, byte[]> readPayload, boolean isAdditional) {
     int parentCount = rootPath.getNameCount();
     Matcher pathMatcher =
         pathPattern.matcher(path.subpath(parentCount, path.getNameCount()).toString());
 
+    return toEvent(pathMatcher, path, readPayload, isAdditional);
+  }
+
+  private EntityEvent toEvent(
+      Matcher pathMatcher, Path path, Function<Path, byte[]> readPayload, boolean isAdditional) {
     if (pathMatcher.find()) {
       String eventType = pathMatcher.group(TYPE_GROUP);
       String eventPath = pathMatcher.group(PATH_GROUP);
@@ -140,6 +186,8 @@ public class EventPaths {
             .payload(bytes)
             .format(eventPayloadFormat.orElse(null))
             .additionalLocation(isAdditional ? rootPath.toString() : null)
+            .source(path.toString())
+            .sourceVersion(getSourceVersion(path))
             .build();
       }
     }
@@ -147,6 +195,16 @@ public class EventPaths {
     return null;
   }
 
+  private String getSourceVersion(Path path) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+      return attributes.lastModifiedTime().toMillis() + "-" + attributes.size();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
   public Stream<Pattern> getPathPatternStream() {
     return Stream.concat(Stream.of(mainPathPatternRead), overridePathPatternsRead.stream());
   }
@@ -194,4 +252,57 @@ public class EventPaths {
 
     return Pattern.compile(pathAdjuster.apply(pattern.toString()));
   }
+
+  // cheap checks on the path segments that rule out most patterns for a given file
+  private static class CompiledPattern {
+    private final Pattern pattern;
+    private final List<Integer> literalPositions;
+    private final List<String> literals;
+    private final int minSegments;
+    private final boolean hasGlob;
+
+    private CompiledPattern(String pathPattern, Pattern pattern) {
+      List<String> segments = PATH_SPLITTER.splitToList(pathPattern);
+      List<Integer> literalPositions = new ArrayList<>();
+      List<String> literals = new ArrayList<>();
+      int globPosition = -1;
+
+      for (int i = 0; i < segments.size(); i++) {
+        String segment = segments.get(i);
+        if (segment.contains("{")) {
+          if (segment.contains("*")) {
+            globPosition = i;
+          }
+        } else {
+          // positions after the glob are counted from the end
+          literalPositions.add(globPosition < 0 ? i : i - segments.size());
+          literals.add(segment);
+        }
+      }
+
+      this.pattern = pattern;
+      this.literalPositions = literalPositions;
+      this.literals = literals;
+      this.hasGlob = globPosition >= 0;
+      this.minSegments = hasGlob ? segments.size() - 1 : segments.size();
+    }
+
+    private boolean mayMatch(Path relativePath) {
+      int count = relativePath.getNameCount();
+
+      if (count < minSegments || (!hasGlob && count != minSegments)) {
+        return false;
+      }
+
+      for (int i = 0; i < literals.size(); i++) {
+        int position = literalPositions.get(i);
+        Path segment = relativePath.getName(position < 0 ? count + position : position);
+        if (!Objects.equals(segment.toString(), literals.get(i))) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+  }
 }
@@ -7,10 +7,12 @@
  */
 package de.ii.xtraplatform.store.app;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import de.ii.xtraplatform.runtime.domain.LogContext;
+import de.ii.xtraplatform.runtime.domain.StoreConfiguration.DecodingMode;
 import de.ii.xtraplatform.store.domain.EntityEvent;
 import de.ii.xtraplatform.store.domain.EventFilter;
 import de.ii.xtraplatform.store.domain.EventStore;
@@ -24,8 +26,14 @@ import de.ii.xtraplatform.store.domain.StateChangeEvent;
 import de.ii.xtraplatform.store.domain.ValueCache;
 import de.ii.xtraplatform.store.domain.ValueEncoding;
 import de.ii.xtraplatform.streams.domain.Event;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -49,6 +57,7 @@ import org.slf4j.LoggerFactory;
 public class EventSourcing<T> implements EventStoreSubscriber, ValueCache<T> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(EventSourcing.class);
+  private static final ValueEncoding.FORMAT SNAPSHOT_FORMAT = ValueEncoding.FORMAT.SMILE;
 
   private final Map<Identifier, T> cache;
   private final Map<Identifier, CompletableFuture<T>> queue;
@@ -60,8 +69,21 @@ public class EventSourcing<T> implements EventStoreSubscriber, ValueCache<T> {
   private final Optional<Function<MutationEvent, List<MutationEvent>>> mutationEventProcessor;
   private final Optional<BiFunction<Identifier, T, CompletableFuture<Void>>> updateHook;
   private final Optional<BiConsumer<Identifier, T>> valueValidator;
+  private final Optional<Function<List<Identifier>, CompletableFuture<Void>>> reloadHook;
   private final Set<String> started;
   private final ExecutorService executorService;
+  private final Optional<Path> snapshotFile;
+  private final Map<Identifier, byte[]> snapshot;
+  private final Set<Identifier> restored;
+  // values that are never written to the snapshot, see ReplayManifest.markEnvironmentDependent
+  private final Set<Identifier> environmentDependent;
+  private long snapshotGeneration;
+  private final DecodingMode decodingMode;
+  // replay events per value that were not decoded yet, see getFromCache
+  private final Map<Identifier, List<EntityEvent>> pending;
+  private final Map<Identifier, Decoding> decoding;
+  // all identifiers in the cache or pending
+  private final IdentifierIndex index;
 
   public EventSourcing(
       EventStore eventStore,
@@ -91,6 +113,28 @@ public class EventSourcing<T> implements EventStoreSubscriber, ValueCache<T> {
       Optional<Function<MutationEvent, List<MutationEvent>>> mutationEventProcessor,
       Optional<BiFunction<Identifier, T, CompletableFuture<Void>>> updateHook,
       Optional<BiConsumer<Identifier, T>> valueValidator) {
+    this(
+        eventStore,
+        eventTypes,
+        valueEncoding,
+        onStart,
+        replayEventProcessor,
+        mutationEventProcessor,
+        updateHook,
+        valueValidator,
+        Optional.empty());
+  }
+
+  public EventSourcing(
+      EventStore eventStore,
+      List<String> eventTypes,
+      ValueEncoding<T> valueEncoding,
+      Supplier<CompletableFuture<Void>> onStart,
+      Optional<Function<ReplayEvent, List<ReplayEvent>>> replayEventProcessor,
+      Optional<Function<MutationEvent, List<MutationEvent>>> mutationEventProcessor,
+      Optional<BiFunction<Identifier, T, CompletableFuture<Void>>> updateHook,
+      Optional<BiConsumer<Identifier, T>> valueValidator,
+      Optional<Function<List<Identifier>, CompletableFuture<Void>>> reloadHook) {
     this.eventStore = eventStore;
     this.eventTypes = eventTypes;
     this.replayEventProcessor = replayEventProcessor;
@@ -101,12 +145,29 @@ public class EventSourcing<T> implements EventStoreSubscriber, ValueCache<T> {
     this.valueEncoding = valueEncoding;
     this.onStart = onStart;
     this.valueValidator = valueValidator;
+    this.reloadHook = reloadHook;
     this.started = new HashSet<>();
     this.executorService =
         MoreExecutors.getExitingExecutorService(
             (ThreadPoolExecutor)
                 Executors.newFixedThreadPool(
                     2, new ThreadFactoryBuilder().setNameFormat("stream.events-%d").build()));
+    this.snapshotFile =
+        eventStore
+            .getSnapshotDirectory()
+            // the snapshot format is only provided by the Jackson encoding
+            .filter(directory -> valueEncoding instanceof ValueEncodingJackson)
+            .map(directory -> directory.resolve(Joiner.on('_').join(eventTypes) + ".snapshot"));
+    this.snapshot = new ConcurrentHashMap<>();
+    this.restored = ConcurrentHashMap.newKeySet();
+    this.environmentDependent = ConcurrentHashMap.newKeySet();
+    this.snapshotGeneration = -1;
+    this.decodingMode = eventStore.getDecodingMode();
+    this.pending = new ConcurrentHashMap<>();
+    this.decoding = new ConcurrentHashMap<>();
+    this.index = new IdentifierIndex();
+
+    snapshotFile.ifPresent(this::readSnapshot);
 
     eventStore.subscribe(this);
   }
@@ -157,10 +218,18 @@ public class EventSourcing<T> implements EventStoreSubscriber, ValueCache<T> {
           started.add(((StateChangeEvent) event).type());
 
           if (started.containsAll(getEventTypes())) {
+            if (snapshotFile.isPresent()) {
+              executorService.submit(() -> writeSnapshot(snapshotFile.get()));
+            } else if (decodingMode == DecodingMode.LAZY_PREWARM) {
+              executorService.submit(this::decodePending);
+            }
             onStart.get().thenRun(() -> LOGGER.debug("Listening for events for {}", started));
           }
           break;
       }
+    } else if (event instanceof ReloadEvent && reloadHook.isPresent()) {
+      reloadHook.get().apply(getIdentifiers(((ReloadEvent) event).filter())).join();
+
     } else if (event instanceof ReloadEvent && updateHook.isPresent()) {
       List<Identifier> identifiers = getIdentifiers(((ReloadEvent) event).filter());
 
@@ -178,22 +247,28 @@ public class EventSourcing<T> implements EventStoreSubscriber, ValueCache<T> {
     }
   }
 
+  // while a pending value is decoded, decoders on the same thread only see what is decoded so far
   @Override
   public boolean isInCache(Identifier identifier) {
-    return cache.containsKey(identifier);
+    return cache.containsKey(identifier)
+        || (isPending(identifier) && !isDecodedByCurrentThread(identifier));
   }
 
   @Override
   public T getFromCache(Identifier identifier) {
+    if (isPending(identifier)) {
+      decodePending(identifier);
+    }
+
     return cache.get(identifier);
   }
 
   public List<Identifier> getIdentifiers(String... path) {
-    return cache.keySet().stream()
-        .filter(
-            identifier ->
-                path.length == 0 || Objects.equals(ImmutableList.copyOf(path), identifier.path()))
-        .collect(Collectors.toList());
+    if (path.length > 0) {
+      return index.get(Arrays.asList(path));
+    }
+
+    return index.getAll(ImmutableList.of());
   }
 
   public CompletableFuture<T> pushMutationEvent(Identifier identifier, T data) {
@@ -213,21 +288,56 @@ public class EventSourcing<T> implements EventStoreSubscriber, ValueCache<T> {
     return pushMutationEventRaw(identifier, payload, false);
   }
 
+  /**
+   * Pushes all values, null for deletion, in one batch. The returned futures complete when the
+   * respective event was processed.
+   */
+  public Map<Identifier, CompletableFuture<T>> pushMutationEvents(Map<Identifier, T> data) {
+    final Map<Identifier, CompletableFuture<T>> completableFutures = new LinkedHashMap<>();
+    final List<EntityEvent> entityEvents = new ArrayList<>();
+
+    try {
+      data.forEach(
+          (identifier, value) -> {
+            entityEvents.add(
+                createMutationEvent(
+                    identifier, valueEncoding.serialize(value), Objects.isNull(value)));
+            completableFutures.put(identifier, new CompletableFuture<>());
+          });
+
+      queue.putAll(completableFutures);
+
+      eventStore.pushAll(entityEvents);
+
+    } catch (Throwable e) {
+      completableFutures.forEach(
+          (identifier, completableFuture) -> {
+            queue.remove(identifier, completableFuture);
+            completableFuture.completeExceptionally(e);
+          });
+    }
+
+    return completableFutures;
+  }
+
   // TODO: which eventType should we push?
+  private EntityEvent createMutationEvent(Identifier identifier, byte[] payload, boolean isDelete) {
+    return ImmutableMutationEvent.builder()
+        .type(eventTypes.get(0))
+        .identifier(identifier)
+        .payload(payload)
+        .deleted(isDelete ? true : null)
+        .format(valueEncoding.getDefaultFormat().toString())
+        .build();
+  }
+
   private CompletableFuture<T> pushMutationEventRaw(
       Identifier identifier, byte[] payload, boolean isDelete) {
     final CompletableFuture<T> completableFuture = new CompletableFuture<>();
 
     try {
       // TODO: if already in queue, pipeline to existing future
-      final EntityEvent entityEvent =
-          ImmutableMutationEvent.builder()
-              .type(eventTypes.get(0))
-              .identifier(identifier)
-              .payload(payload)
-              .deleted(isDelete ? true : null)
-              .format(valueEncoding.getDefaultFormat().toString())
-              .build();
+      final EntityEvent entityEvent = createMutationEvent(identifier, payload, isDelete);
 
       queue.put(identifier, completableFuture);
 
@@ -244,10 +354,10 @@ public class EventSourcing<T> implements EventStoreSubscriber, ValueCache<T> {
   }
 
   private void onEmit(EntityEvent event) throws Throwable {
-    Identifier key = event.identifier();
+    Identifier key = Identifier.intern(event.identifier());
     ValueEncoding.FORMAT payloadFormat = ValueEncoding.FORMAT.fromString(event.format());
 
-    if (payloadFormat == ValueEncoding.FORMAT.UNKNOWN) {
+    if (!valueEncoding.isSupported(event.format())) {
       if (queue.containsKey(key)) {
         queue.remove(key).complete(null);
       }
@@ -258,6 +368,20 @@ public class EventSourcing<T> implements EventStoreSubscriber, ValueCache<T> {
       LOGGER.trace("Adding event: {} {} {}", event.type(), event.identifier(), event.format());
     }
 
+    if (event instanceof ReplayEvent
+        && Objects.equals(((ReplayEvent) event).environmentDependent(), true)) {
+      environmentDependent.add(key);
+    }
+
+    if (restoreFromSnapshot(event) || deferDecoding(event)) {
+      return;
+    }
+
+    decode(event, payloadFormat);
+  }
+
+  private void decode(EntityEvent event, ValueEncoding.FORMAT payloadFormat) throws Throwable {
+    Identifier key = Identifier.intern(event.identifier());
     T value;
     Throwable error = null;
 
@@ -282,8 +406,10 @@ public class EventSourcing<T> implements EventStoreSubscriber, ValueCache<T> {
 
     if (Objects.isNull(value)) {
       cache.remove(key);
+      unindex(key);
     } else {
       cache.put(key, value);
+      index.add(key);
     }
 
     if (queue.containsKey(key)) {
@@ -297,19 +423,193 @@ public class EventSourcing<T> implements EventStoreSubscriber, ValueCache<T> {
     }
   }
 
-  private List<Identifier> getIdentifiers(EventFilter filter) {
+  // replay events are kept as is until the value is requested, any other event needs the value
+  private boolean deferDecoding(EntityEvent event) {
+    Identifier key = Identifier.intern(event.identifier());
 
-    return getIdentifiers().stream()
-        .filter(
-            identifier -> {
-              if (filter.getEntityTypes().contains("*")
-                  || (!identifier.path().isEmpty()
-                      && filter.getEntityTypes().contains(identifier.path().get(0)))) {
-                return filter.getIds().contains("*") || filter.getIds().contains(identifier.id());
-              }
+    if (decodingMode == DecodingMode.EAGER) {
+      return false;
+    }
+
+    synchronized (pending) {
+      if (event instanceof ReplayEvent && !cache.containsKey(key) && !queue.containsKey(key)) {
+        pending.computeIfAbsent(key, ignore -> new ArrayList<>()).add(event);
+        index.add(key);
+        return true;
+      }
+    }
+
+    if (isPending(key)) {
+      decodePending(key);
+    }
+
+    return false;
+  }
 
-              return false;
+  // a value that is being decoded is no longer in pending
+  private boolean isPending(Identifier key) {
+    return pending.containsKey(key) || decoding.containsKey(key);
+  }
+
+  private boolean isDecodedByCurrentThread(Identifier key) {
+    Decoding current = decoding.get(key);
+
+    return Objects.nonNull(current) && current.thread == Thread.currentThread();
+  }
+
+  // values are decoded under a lock per identifier, readers of other values are not blocked
+  private void decodePending(Identifier key) {
+    Decoding own = new Decoding();
+    Decoding running = decoding.putIfAbsent(key, own);
+
+    if (Objects.nonNull(running)) {
+      if (running.thread != Thread.currentThread()) {
+        running.done.join();
+      }
+      return;
+    }
+
+    List<EntityEvent> events;
+    // removed before decoding, otherwise a failed decode would keep the key in the index
+    synchronized (pending) {
+      events = pending.remove(key);
+    }
+
+    try {
+      if (Objects.nonNull(events)) {
+        for (EntityEvent event : events) {
+          try {
+            decode(event, ValueEncoding.FORMAT.fromString(event.format()));
+          } catch (Throwable e) {
+            LogContext.error(LOGGER, e, "Cannot load '{}'", event.asPath());
+          }
+        }
+      }
+    } finally {
+      decoding.remove(key);
+      unindex(key);
+      own.done.complete(null);
+    }
+  }
+
+  private void decodePending() {
+    new ArrayList<>(pending.keySet()).forEach(this::decodePending);
+
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("Decoded all pending values for {}", eventTypes);
+    }
+  }
+
+  private void unindex(Identifier identifier) {
+    index.remove(
+        identifier,
+        removed -> !cache.containsKey(removed) && !pending.containsKey(removed));
+  }
+
+  // the snapshot holds the final value, so all events for an unchanged value are consumed by it
+  private boolean restoreFromSnapshot(EntityEvent event) {
+    Identifier key = Identifier.intern(event.identifier());
+
+    if (!(event instanceof ReplayEvent)
+        || !Objects.equals(((ReplayEvent) event).snapshotGeneration(), snapshotGeneration)
+        || !snapshot.containsKey(key)) {
+      return false;
+    }
+    if (restored.contains(key)) {
+      return true;
+    }
+
+    try {
+      T value = valueEncoding.deserialize(key, snapshot.get(key), SNAPSHOT_FORMAT, true);
+      if (Objects.isNull(value)) {
+        return false;
+      }
+      cache.put(key, value);
+      index.add(key);
+      restored.add(key);
+
+      return true;
+    } catch (Throwable e) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Cannot restore '{}' from replay snapshot: {}", key, e.getMessage());
+      }
+      return false;
+    }
+  }
+
+  private void readSnapshot(Path file) {
+    SnapshotFile.read(
+            file,
+            eventStore.getSnapshotBundles(),
+            in -> {
+              String format = in.readUTF();
+              if (!Objects.equals(format, SNAPSHOT_FORMAT.toString())) {
+                throw new IOException("unexpected format " + format);
+              }
+              int size = in.readInt();
+              for (int i = 0; i < size; i++) {
+                snapshot.put(SnapshotFile.readIdentifier(in), SnapshotFile.readBytes(in));
+              }
+              return null;
             })
+        .ifPresent(content -> this.snapshotGeneration = content.getGeneration());
+  }
+
+  // a snapshot has to contain all values, so pending values are decoded first
+  private void writeSnapshot(Path file) {
+    try {
+      if (!pending.isEmpty()) {
+        decodePending();
+      }
+
+      Map<Identifier, T> values = new HashMap<>(cache);
+      values.keySet().removeAll(environmentDependent);
+
+      SnapshotFile.write(
+          file,
+          eventStore.getSnapshotGeneration(),
+          eventStore.getSnapshotBundles(),
+          out -> {
+            out.writeUTF(SNAPSHOT_FORMAT.toString());
+            out.writeInt(values.size());
+            for (Map.Entry<Identifier, T> entry : values.entrySet()) {
+              SnapshotFile.writeIdentifier(out, entry.getKey());
+              SnapshotFile.writeBytes(
+                  out,
+                  ((ValueEncodingJackson<T>) valueEncoding)
+                      .serialize(entry.getValue(), SNAPSHOT_FORMAT));
+            }
+          });
+
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(
+            "Wrote replay snapshot for {}: {} values, {} restored",
+            eventTypes,
+            values.size(),
+            restored.size());
+      }
+    } catch (Throwable e) {
+      LogContext.error(LOGGER, e, "Could not write replay snapshot to '{}'", file);
+    } finally {
+      snapshot.clear();
+    }
+  }
+
+  private List<Identifier> getIdentifiers(EventFilter filter) {
+    List<Identifier> candidates =
+        filter.getEntityTypes().contains("*")
+            ? getIdentifiers()
+            : index.getAll(filter.getEntityTypes());
+
+    return candidates.stream()
+        .filter(
+            identifier ->
+                filter.getIds().contains("*") || filter.getIds().contains(identifier.id()))
         .collect(Collectors.toList());
   }
+
+  private static class Decoding {
+    private final Thread thread = Thread.currentThread();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+  }
 }
@@ -7,8 +7,16 @@
  */
 package de.ii.xtraplatform.store.app;
 
+import com.google.common.hash.Hashing;
+import de.ii.xtraplatform.di.domain.Registry;
+import de.ii.xtraplatform.di.domain.RegistryState;
+import de.ii.xtraplatform.dropwizard.domain.Dropwizard;
+import de.ii.xtraplatform.dropwizard.domain.JacksonSubTypeIds;
 import de.ii.xtraplatform.dropwizard.domain.XtraPlatform;
+import de.ii.xtraplatform.runtime.domain.Constants;
+import de.ii.xtraplatform.runtime.domain.LogContext;
 import de.ii.xtraplatform.runtime.domain.StoreConfiguration;
+import de.ii.xtraplatform.runtime.domain.StoreConfiguration.DecodingMode;
 import de.ii.xtraplatform.runtime.domain.StoreConfiguration.StoreMode;
 import de.ii.xtraplatform.store.domain.EntityEvent;
 import de.ii.xtraplatform.store.domain.EventFilter;
@@ -19,21 +27,30 @@ import de.ii.xtraplatform.store.domain.Identifier;
 import de.ii.xtraplatform.store.domain.ImmutableIdentifier;
 import de.ii.xtraplatform.store.domain.ImmutableReloadEvent;
 import de.ii.xtraplatform.store.domain.ImmutableReplayEvent;
+import de.ii.xtraplatform.store.domain.PartialSaveException;
+import de.ii.xtraplatform.store.domain.ReplayEvent;
 import de.ii.xtraplatform.store.domain.entities.EntityDataDefaultsStore;
 import de.ii.xtraplatform.streams.domain.ActorSystemProvider;
 import de.ii.xtraplatform.streams.domain.StreamRunner;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Context;
 import org.apache.felix.ipojo.annotations.Instantiate;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Requires;
 import org.apache.felix.ipojo.annotations.Validate;
+import org.apache.felix.ipojo.whiteboard.Wbp;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,25 +58,61 @@ import org.slf4j.LoggerFactory;
 @Component
 @Provides
 @Instantiate
-public class EventStoreDefault implements EventStore {
+@Wbp(
+    filter =
+        Registry.FILTER_PREFIX + EventStoreDefault.JACKSON_SUB_TYPE_IDS + Registry.FILTER_SUFFIX,
+    onArrival = Registry.ON_ARRIVAL_METHOD,
+    onDeparture = Registry.ON_DEPARTURE_METHOD)
+public class EventStoreDefault implements EventStore, Registry<JacksonSubTypeIds> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(EventStoreDefault.class);
+  private static final String SNAPSHOT_DIR = "cache/store";
+  static final String JACKSON_SUB_TYPE_IDS =
+      "de.ii.xtraplatform.dropwizard.domain.JacksonSubTypeIds";
 
+  private final Registry.State<JacksonSubTypeIds> subTypeIds;
   private final EventStoreDriver driver;
   private final EventSubscriptions subscriptions;
   private final StoreConfiguration storeConfiguration;
   private final boolean isReadOnly;
+  private final Optional<Path> snapshotDirectory;
+  private final long snapshotGeneration;
+  private final String snapshotBundles;
 
   EventStoreDefault(
       @Context BundleContext bundleContext,
       @Requires XtraPlatform xtraPlatform,
+      @Requires Dropwizard dropwizard,
       @Requires ActorSystemProvider actorSystemProvider,
       @Requires EventStoreDriver eventStoreDriver) {
+    this.subTypeIds = new RegistryState<>(JACKSON_SUB_TYPE_IDS, bundleContext);
     this.driver = eventStoreDriver;
     this.subscriptions =
-        new EventSubscriptions(new StreamRunner(bundleContext, actorSystemProvider, "events"));
+        new EventSubscriptions(
+            new StreamRunner(bundleContext, actorSystemProvider, "events"),
+            bundleContext,
+            dropwizard.getEnvironment().metrics(),
+            xtraPlatform.getConfiguration().store.dispatchThreads);
     this.storeConfiguration = xtraPlatform.getConfiguration().store;
     this.isReadOnly = storeConfiguration.mode == StoreMode.READ_ONLY;
+    this.snapshotDirectory =
+        storeConfiguration.snapshots
+            ? Optional.of(
+                Paths.get(bundleContext.getProperty(Constants.DATA_DIR_KEY), SNAPSHOT_DIR))
+            : Optional.empty();
+    this.snapshotGeneration = System.currentTimeMillis();
+    this.snapshotBundles = snapshotDirectory.isPresent() ? getBundles(bundleContext) : "";
+  }
+
+  // all bundles are installed before any of them is started
+  private static String getBundles(BundleContext bundleContext) {
+    String bundles =
+        Arrays.stream(bundleContext.getBundles())
+            .map(bundle -> bundle.getSymbolicName() + ":" + bundle.getVersion())
+            .sorted()
+            .collect(Collectors.joining(","));
+
+    return Hashing.sha256().hashString(bundles, StandardCharsets.UTF_8).toString();
   }
 
   @Validate
@@ -68,7 +121,11 @@ public class EventStoreDefault implements EventStore {
 
     driver.start();
 
-    driver.loadEventStream().forEach(subscriptions::emitEvent);
+    if (snapshotDirectory.isPresent()) {
+      replayWithSnapshot(snapshotDirectory.get());
+    } else {
+      driver.loadEventStream().forEach(subscriptions::emitEvent);
+    }
 
     // replay done
     subscriptions.startListening();
@@ -82,12 +139,82 @@ public class EventStoreDefault implements EventStore {
                         LOGGER.info("Store changes detected: {}", changedFiles);
                         EventFilter filter = EventFilter.fromPaths(changedFiles);
                         // LOGGER.debug("FILTER {}", filter);
-                        replay(filter);
+                        if (storeConfiguration.watchDebounce > 0) {
+                          replay(filter, driver.loadEventStream(filter), false);
+                        } else {
+                          replay(filter);
+                        }
                       }))
           .start();
     }
   }
 
+  // events from unchanged files are marked, subscribers may then restore values from their snapshot
+  private void replayWithSnapshot(Path directory) {
+    List<EntityEvent> events =
+        ReplayManifest.markEnvironmentDependent(
+            driver.loadEventStream().collect(Collectors.toList()));
+    ReplayManifest manifest = ReplayManifest.of(events);
+
+    // a manifest written by other bundle versions is ignored, so no event is marked
+    Optional<SnapshotFile.Content<ReplayManifest>> previous =
+        ReplayManifest.read(directory, snapshotBundles);
+    if (previous.isPresent()) {
+      events = previous.get().getBody().markUnchanged(events, previous.get().getGeneration());
+
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(
+            "Replay snapshot: {} of {} events unchanged",
+            events.stream()
+                .filter(
+                    event ->
+                        event instanceof ReplayEvent
+                            && Objects.nonNull(((ReplayEvent) event).snapshotGeneration()))
+                .count(),
+            events.size());
+      }
+    }
+
+    events.forEach(subscriptions::emitEvent);
+
+    try {
+      manifest.write(directory, snapshotGeneration, snapshotBundles);
+    } catch (IOException e) {
+      LogContext.error(LOGGER, e, "Could not write replay snapshot to '{}'", directory);
+    }
+  }
+
+  @Override
+  public State<JacksonSubTypeIds> getRegistryState() {
+    return subTypeIds;
+  }
+
+  // subscribers are started when no more subtype ids arrive
+  @Override
+  public void onRegister(Optional<JacksonSubTypeIds> instance) {
+    subscriptions.onSubTypeIdsArrival();
+  }
+
+  @Override
+  public Optional<Path> getSnapshotDirectory() {
+    return snapshotDirectory;
+  }
+
+  @Override
+  public long getSnapshotGeneration() {
+    return snapshotGeneration;
+  }
+
+  @Override
+  public String getSnapshotBundles() {
+    return snapshotBundles;
+  }
+
+  @Override
+  public DecodingMode getDecodingMode() {
+    return storeConfiguration.decoding;
+  }
+
   @Override
   public void subscribe(EventStoreSubscriber subscriber) {
     subscriptions.addSubscriber(subscriber);
@@ -113,6 +240,38 @@ public class EventStoreDefault implements EventStore {
     subscriptions.emitEvent(event);
   }
 
+  // the batch is emitted only after all files were written, so subscribers never see a partial one
+  @Override
+  public void pushAll(List<EntityEvent> events) {
+    if (isReadOnly) {
+      throw new UnsupportedOperationException(
+          "Operating in read-only mode, writes are not allowed.");
+    }
+
+    try {
+      driver.saveEvents(events);
+    } catch (PartialSaveException e) {
+      List<EntityEvent> saved = events.subList(0, e.getSaved());
+      LOGGER.error(
+          "Could only save {} of {} events, the store now contains: {}",
+          saved.size(),
+          events.size(),
+          saved.stream().map(EntityEvent::asPath).collect(Collectors.toList()));
+      // keep the cache in line with the store
+      saved.forEach(subscriptions::emitEvent);
+
+      throw new IllegalStateException("Could not save events", e);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not save events", e);
+    }
+
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("Saved batch of {} events", events.size());
+    }
+
+    events.forEach(subscriptions::emitEvent);
+  }
+
   @Override
   public boolean isReadOnly() {
     return isReadOnly;
@@ -120,11 +279,14 @@ public class EventStoreDefault implements EventStore {
 
   @Override
   public void replay(EventFilter filter) {
+    replay(filter, driver.loadEventStream(), true);
+  }
+
+  private void replay(EventFilter filter, Stream<EntityEvent> events, boolean throttle) {
     Set<EntityEvent> deleteEvents = new HashSet<>();
 
     List<EntityEvent> eventStream =
-        driver
-            .loadEventStream()
+        events
             .filter(
                 event -> {
                   boolean matches = filter.matches(event);
@@ -180,27 +342,23 @@ public class EventStoreDefault implements EventStore {
                 })
             .collect(Collectors.toList());
 
-    deleteEvents.forEach(
-        event -> {
-          subscriptions.emitEvent(event).join();
-          try {
-            Thread.sleep(50);
-          } catch (InterruptedException e) {
-            // ignore
-          }
-        });
-    eventStream.forEach(
-        event -> {
-          subscriptions.emitEvent(event).join();
-          try {
-            Thread.sleep(50);
-          } catch (InterruptedException e) {
-            // ignore
-          }
-        });
+    deleteEvents.forEach(event -> emitAndWait(event, throttle));
+    eventStream.forEach(event -> emitAndWait(event, throttle));
     // TODO: type
     subscriptions
         .emitEvent(ImmutableReloadEvent.builder().type("entities").filter(filter).build())
         .join();
   }
+
+  private void emitAndWait(EntityEvent event, boolean throttle) {
+    subscriptions.emitEvent(event).join();
+
+    if (throttle) {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        // ignore
+      }
+    }
+  }
 }
@@ -8,6 +8,7 @@
 package de.ii.xtraplatform.store.app;
 
 import akka.stream.QueueOfferResult;
+import com.codahale.metrics.MetricRegistry;
 import de.ii.xtraplatform.runtime.domain.LogContext.MARKER;
 import de.ii.xtraplatform.store.domain.EntityEvent;
 import de.ii.xtraplatform.store.domain.EventStoreSubscriber;
@@ -17,6 +18,8 @@ import de.ii.xtraplatform.store.domain.TypedEvent;
 import de.ii.xtraplatform.streams.domain.Event;
 import de.ii.xtraplatform.streams.domain.EventStream;
 import de.ii.xtraplatform.streams.domain.StreamRunner;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
@@ -24,6 +27,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,66 +39,105 @@ public class EventSubscriptions {
   private final Map<String, EventStream<Event>> eventStreams;
   private final StreamRunner streamRunner;
   private final ScheduledExecutorService executorService;
+  private final SubscriberBarrier barrier;
+  private final MetricRegistry metricRegistry;
+  private final EventDispatcher dispatcher;
+  private final List<Runnable> pendingSubscribers;
   private boolean isStarted;
+  private boolean isOpen;
 
-  protected EventSubscriptions(StreamRunner streamRunner) {
+  protected EventSubscriptions(
+      StreamRunner streamRunner,
+      BundleContext bundleContext,
+      MetricRegistry metricRegistry,
+      int dispatchParallelism) {
     this.eventStreams = new ConcurrentHashMap<>();
     this.streamRunner = streamRunner;
+    this.dispatcher = new EventDispatcher(dispatchParallelism);
     this.executorService = new ScheduledThreadPoolExecutor(1);
+    this.barrier = new SubscriberBarrier(bundleContext, executorService);
+    this.metricRegistry = metricRegistry;
+    this.pendingSubscribers = new ArrayList<>();
+    barrier.whenReady().thenRunAsync(this::startPendingSubscribers, executorService);
   }
 
-  public void addSubscriber(EventStoreSubscriber subscriber) {
-    // TODO: we need the 10 second delay to wait for all JacksonSubTypeIds, find a better solution
-    executorService.schedule(
-        () -> {
-          Thread.currentThread().setName("startup");
-
-          if (LOGGER.isDebugEnabled(MARKER.DI)) {
-            LOGGER.debug(
-                MARKER.DI,
-                "New event store subscriber: {} {}",
-                subscriber.getEventTypes(),
-                subscriber);
-          }
-
-          for (String eventType : subscriber.getEventTypes()) {
-            EventStream<Event> eventStream = getEventStream(eventType);
-            CompletableFuture<Void> cmp = new CompletableFuture<>();
-            eventStream.foreach(
-                event -> {
-                  if (event instanceof StateChangeEvent
-                      && ((StateChangeEvent) event).state() == StateChangeEvent.STATE.LISTENING) {
-                    subscriber.onEmit(event);
-                    if (LOGGER.isTraceEnabled()) {
-                      LOGGER.trace("{} STARTED LISTENER", eventType);
-                    }
-                    cmp.complete(null);
-                    return;
-                  }
-
-                  // only emit one event at a time
-                  synchronized (streamRunner) {
-                    if (LOGGER.isTraceEnabled() && event instanceof EntityEvent) {
-                      LOGGER.trace(
-                          "EMIT: {} {}",
-                          ((EntityEvent) event).type(),
-                          ((EntityEvent) event).identifier());
-                    }
-                    subscriber.onEmit(event);
-                    if (LOGGER.isTraceEnabled() && event instanceof EntityEvent) {
-                      LOGGER.trace(
-                          "EMITTED: {} {}",
-                          ((EntityEvent) event).type(),
-                          ((EntityEvent) event).identifier());
-                    }
-                  }
-                });
-            cmp.join();
-            // LOGGER.debug("NEXT");
-          }
-        },
-        10,
-        TimeUnit.SECONDS);
+  public void onSubTypeIdsArrival() {
+    barrier.onArrival();
+  }
+
+  // subscribers have to start in the order they were added, e.g. defaults before entities; the
+  // single thread of the executor preserves that order once the barrier is open
+  public synchronized void addSubscriber(EventStoreSubscriber subscriber) {
+    final long addedAt = System.currentTimeMillis();
+    Runnable subscribe = () -> subscribe(subscriber, addedAt);
+
+    // wait for all JacksonSubTypeIds
+    if (isOpen) {
+      executorService.execute(subscribe);
+    } else {
+      pendingSubscribers.add(subscribe);
+    }
+  }
+
+  private void startPendingSubscribers() {
+    List<Runnable> subscribers;
+    synchronized (this) {
+      subscribers = new ArrayList<>(pendingSubscribers);
+      pendingSubscribers.clear();
+      this.isOpen = true;
+    }
+
+    subscribers.forEach(Runnable::run);
+  }
+
+  private void subscribe(EventStoreSubscriber subscriber, long addedAt) {
+    Thread.currentThread().setName("startup");
+
+    long waited = System.currentTimeMillis() - addedAt;
+    metricRegistry
+        .timer(
+            MetricRegistry.name(
+                EventSubscriptions.class, "wait", subscriber.getClass().getSimpleName()))
+        .update(waited, TimeUnit.MILLISECONDS);
+
+    if (LOGGER.isDebugEnabled(MARKER.DI)) {
+      LOGGER.debug(
+          MARKER.DI,
+          "New event store subscriber: {} {} (waited {}ms)",
+          subscriber.getEventTypes(),
+          subscriber,
+          waited);
+    }
+
+    for (String eventType : subscriber.getEventTypes()) {
+      EventStream<Event> eventStream = getEventStream(eventType);
+      CompletableFuture<Void> cmp = new CompletableFuture<>();
+      eventStream.foreach(
+          event -> {
+            if (event instanceof StateChangeEvent
+                && ((StateChangeEvent) event).state() == StateChangeEvent.STATE.LISTENING) {
+              dispatcher.awaitDispatched();
+              subscriber.onEmit(event);
+              if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("{} STARTED LISTENER", eventType);
+              }
+              cmp.complete(null);
+              return;
+            }
+
+            if (LOGGER.isTraceEnabled() && event instanceof EntityEvent) {
+              LOGGER.trace(
+                  "EMIT: {} {}", ((EntityEvent) event).type(), ((EntityEvent) event).identifier());
+            }
+            if (event instanceof EntityEvent) {
+              dispatcher.dispatch(subscriber, (EntityEvent) event);
+            } else {
+              dispatcher.dispatchBarrier(subscriber, event);
+            }
+          });
+      cmp.join();
+      // LOGGER.debug("NEXT");
+    }
   }
 
   public synchronized CompletableFuture<QueueOfferResult> emitEvent(TypedEvent event) {
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.app;
+
+import com.google.common.collect.ImmutableList;
+import de.ii.xtraplatform.store.domain.Identifier;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+/**
+ * Identifiers arranged in a tree of path segments. Reads are lock-free and iterate weakly
+ * consistent views, so listings are never blocked or broken by concurrent changes. The order of
+ * all listings is the natural order of {@link Identifier}.
+ */
+class IdentifierIndex {
+
+  private static class Node {
+    private final Map<String, Node> children = new ConcurrentSkipListMap<>();
+    private final NavigableSet<Identifier> identifiers = new ConcurrentSkipListSet<>();
+  }
+
+  private final Node root;
+
+  IdentifierIndex() {
+    this.root = new Node();
+  }
+
+  void add(Identifier identifier) {
+    Node node = root;
+    for (String segment : identifier.path()) {
+      node = node.children.computeIfAbsent(segment, ignore -> new Node());
+    }
+
+    synchronized (node) {
+      node.identifiers.add(identifier);
+    }
+  }
+
+  // the condition is checked while holding the node, so a concurrent add cannot be lost
+  void remove(Identifier identifier, Predicate<Identifier> condition) {
+    Node node = find(identifier.path());
+
+    if (Objects.nonNull(node)) {
+      synchronized (node) {
+        if (condition.test(identifier)) {
+          node.identifiers.remove(identifier);
+        }
+      }
+    }
+  }
+
+  /** The identifiers with exactly the given path. */
+  List<Identifier> get(List<String> path) {
+    Node node = find(path);
+
+    return Objects.isNull(node) ? ImmutableList.of() : ImmutableList.copyOf(node.identifiers);
+  }
+
+  /** The identifiers with the given path or a path that starts with it. */
+  List<Identifier> getAll(List<String> prefix) {
+    Node node = find(prefix);
+    ImmutableList.Builder<Identifier> identifiers = ImmutableList.builder();
+
+    if (Objects.nonNull(node)) {
+      collect(node, identifiers);
+    }
+
+    return identifiers.build();
+  }
+
+  /** The identifiers whose path starts with one of the given segments. */
+  List<Identifier> getAll(Collection<String> firstSegments) {
+    ImmutableList.Builder<Identifier> identifiers = ImmutableList.builder();
+
+    root.children.forEach(
+        (segment, child) -> {
+          if (firstSegments.contains(segment)) {
+            collect(child, identifiers);
+          }
+        });
+
+    return identifiers.build();
+  }
+
+  private Node find(List<String> path) {
+    Node node = root;
+    for (int i = 0; i < path.size() && Objects.nonNull(node); i++) {
+      node = node.children.get(path.get(i));
+    }
+
+    return node;
+  }
+
+  // own identifiers before children matches the order of Identifier.compareTo
+  private static void collect(Node node, ImmutableList.Builder<Identifier> identifiers) {
+    identifiers.addAll(node.identifiers);
+    node.children.values().forEach(child -> collect(child, identifiers));
+  }
+}
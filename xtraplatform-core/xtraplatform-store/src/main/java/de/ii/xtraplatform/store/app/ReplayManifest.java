@@ -0,0 +1,214 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.app;
+
+import com.google.common.base.Splitter;
+import de.ii.xtraplatform.store.domain.EntityEvent;
+import de.ii.xtraplatform.store.domain.ImmutableReplayEvent;
+import de.ii.xtraplatform.store.domain.ReplayEvent;
+import de.ii.xtraplatform.store.domain.entities.EntityDataDefaultsPath;
+import de.ii.xtraplatform.store.domain.entities.EntityDataDefaultsStore;
+import de.ii.xtraplatform.store.domain.entities.EntityDataOverridesPath;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The store files a replay was built from, with last modified time and size. Used to find the
+ * events that are unchanged since the last replay snapshot.
+ */
+public class ReplayManifest {
+
+  static final String FILE_NAME = "events.snapshot";
+  private static final Splitter KEY_SPLITTER = Splitter.on('/');
+
+  // source -> (version, key)
+  private final Map<String, Map.Entry<String, String>> sources;
+
+  private ReplayManifest(Map<String, Map.Entry<String, String>> sources) {
+    this.sources = sources;
+  }
+
+  public static ReplayManifest of(List<EntityEvent> events) {
+    Map<String, Map.Entry<String, String>> sources = new LinkedHashMap<>();
+
+    for (EntityEvent event : events) {
+      if (event instanceof ReplayEvent && Objects.nonNull(((ReplayEvent) event).source())) {
+        sources.put(
+            ((ReplayEvent) event).source(),
+            new SimpleImmutableEntry<>(
+                Objects.requireNonNullElse(((ReplayEvent) event).sourceVersion(), ""),
+                getKey(event)));
+      }
+    }
+
+    return new ReplayManifest(sources);
+  }
+
+  public static Optional<SnapshotFile.Content<ReplayManifest>> read(
+      Path directory, String bundles) {
+    return SnapshotFile.read(
+        directory.resolve(FILE_NAME),
+        bundles,
+        in -> {
+          Map<String, Map.Entry<String, String>> sources = new LinkedHashMap<>();
+          int size = in.readInt();
+          for (int i = 0; i < size; i++) {
+            sources.put(in.readUTF(), new SimpleImmutableEntry<>(in.readUTF(), in.readUTF()));
+          }
+          return new ReplayManifest(sources);
+        });
+  }
+
+  public void write(Path directory, long generation, String bundles) throws IOException {
+    SnapshotFile.write(
+        directory.resolve(FILE_NAME),
+        generation,
+        bundles,
+        out -> {
+          out.writeInt(sources.size());
+          for (Map.Entry<String, Map.Entry<String, String>> source : sources.entrySet()) {
+            out.writeUTF(source.getKey());
+            out.writeUTF(source.getValue().getKey());
+            out.writeUTF(source.getValue().getValue());
+          }
+        });
+  }
+
+  /**
+   * Marks every event as unchanged whose source, and all other sources of the same value, did not
+   * change since this manifest was written. Changed defaults invalidate all entities of the type.
+   */
+  public List<EntityEvent> markUnchanged(List<EntityEvent> events, long generation) {
+    ReplayManifest current = of(events);
+    Set<String> dirtyKeys = new HashSet<>();
+
+    current.sources.forEach(
+        (source, versionAndKey) -> {
+          Map.Entry<String, String> previous = sources.get(source);
+          if (Objects.isNull(previous)
+              || versionAndKey.getKey().isEmpty()
+              || !Objects.equals(previous.getKey(), versionAndKey.getKey())) {
+            dirtyKeys.add(versionAndKey.getValue());
+          }
+        });
+    sources.forEach(
+        (source, versionAndKey) -> {
+          if (!current.sources.containsKey(source)) {
+            dirtyKeys.add(versionAndKey.getValue());
+          }
+        });
+
+    Set<String> dirtyDefaults = getDefaults(dirtyKeys);
+
+    return events.stream()
+        .map(
+            event -> {
+              if (!(event instanceof ReplayEvent)
+                  || Objects.isNull(((ReplayEvent) event).source())
+                  || Objects.equals(((ReplayEvent) event).environmentDependent(), true)
+                  || isAffected(getKey(event), dirtyKeys, dirtyDefaults)) {
+                return event;
+              }
+
+              return ImmutableReplayEvent.builder()
+                  .from((ReplayEvent) event)
+                  .snapshotGeneration(generation)
+                  .build();
+            })
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Marks every event whose value contains environment variables, directly or via the defaults of
+   * its type. Restoring such a value would miss changed variables and writing it would persist
+   * the substituted secrets.
+   */
+  public static List<EntityEvent> markEnvironmentDependent(List<EntityEvent> events) {
+    Set<String> dependentKeys =
+        events.stream()
+            .filter(
+                event ->
+                    Objects.nonNull(event.payload())
+                        && ValueDecoderEnvVarSubstitution.containsVariable(event.payload()))
+            .map(ReplayManifest::getKey)
+            .collect(Collectors.toSet());
+
+    if (dependentKeys.isEmpty()) {
+      return events;
+    }
+
+    Set<String> dependentDefaults = getDefaults(dependentKeys);
+
+    return events.stream()
+        .map(
+            event -> {
+              if (!(event instanceof ReplayEvent)
+                  || !isAffected(getKey(event), dependentKeys, dependentDefaults)) {
+                return event;
+              }
+
+              return ImmutableReplayEvent.builder()
+                  .from((ReplayEvent) event)
+                  .environmentDependent(true)
+                  .build();
+            })
+        .collect(Collectors.toList());
+  }
+
+  private static Set<String> getDefaults(Set<String> keys) {
+    return keys.stream()
+        .map(KEY_SPLITTER::splitToList)
+        .filter(key -> Objects.equals(key.get(0), EntityDataDefaultsStore.EVENT_TYPE))
+        .map(key -> key.get(1))
+        .collect(Collectors.toSet());
+  }
+
+  // defaults affect all entities of the type
+  private static boolean isAffected(String key, Set<String> keys, Set<String> defaults) {
+    List<String> keySegments = KEY_SPLITTER.splitToList(key);
+
+    return keys.contains(key) || (keySegments.size() > 1 && defaults.contains(keySegments.get(1)));
+  }
+
+  // all sources with the same key contribute to the same cached value
+  static String getKey(EntityEvent event) {
+    List<String> path = event.identifier().path();
+
+    switch (event.type()) {
+      case "entities":
+        return String.format(
+            "entities/%s/%s",
+            path.isEmpty() ? "" : path.get(0),
+            path.size() > 1 ? path.get(1) : event.identifier().id());
+      case "overrides":
+        try {
+          EntityDataOverridesPath overridesPath = EntityDataOverridesPath.from(event.identifier());
+          return String.format(
+              "entities/%s/%s", overridesPath.getEntityType(), overridesPath.getEntityId());
+        } catch (Throwable e) {
+          return "overrides/" + event.identifier().asPath();
+        }
+      case EntityDataDefaultsStore.EVENT_TYPE:
+        return String.format(
+            "%s/%s",
+            EntityDataDefaultsStore.EVENT_TYPE,
+            EntityDataDefaultsPath.from(event.identifier()).getEntityType());
+      default:
+        return event.type() + "/" + event.identifier().asPath();
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.app;
+
+import de.ii.xtraplatform.store.domain.Identifier;
+import de.ii.xtraplatform.store.domain.ImmutableIdentifier;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checksummed binary container for replay snapshots. Layout: magic, version, generation, bundles,
+ * body, CRC32 of everything before the checksum. Restored values depend on the code that built
+ * them, so a snapshot written by other bundle versions is ignored.
+ */
+public class SnapshotFile {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotFile.class);
+  private static final int MAGIC = 0x58505353;
+  private static final int VERSION = 2;
+
+  @FunctionalInterface
+  public interface Writer {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  @FunctionalInterface
+  public interface Reader<R> {
+    R read(DataInputStream in) throws IOException;
+  }
+
+  public static final class Content<R> {
+    private final long generation;
+    private final R body;
+
+    private Content(long generation, R body) {
+      this.generation = generation;
+      this.body = body;
+    }
+
+    public long getGeneration() {
+      return generation;
+    }
+
+    public R getBody() {
+      return body;
+    }
+  }
+
+  private SnapshotFile() {}
+
+  public static void write(Path file, long generation, String bundles, Writer writer)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(generation);
+    out.writeUTF(bundles);
+    writer.write(out);
+    out.flush();
+
+    CRC32 crc32 = new CRC32();
+    crc32.update(bytes.toByteArray());
+    out.writeLong(crc32.getValue());
+    out.flush();
+
+    Files.createDirectories(file.getParent());
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.write(tmp, bytes.toByteArray());
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  public static <R> Optional<Content<R>> read(Path file, String bundles, Reader<R> reader) {
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+
+    try {
+      byte[] bytes = Files.readAllBytes(file);
+      if (bytes.length < 24) {
+        throw new IOException("file is truncated");
+      }
+
+      CRC32 crc32 = new CRC32();
+      crc32.update(bytes, 0, bytes.length - 8);
+      if (crc32.getValue() != ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong()) {
+        throw new IOException("checksum mismatch");
+      }
+
+      DataInputStream in =
+          new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("unknown format");
+      }
+      long generation = in.readLong();
+      if (!Objects.equals(in.readUTF(), bundles)) {
+        LOGGER.info("Ignoring replay snapshot '{}': written by other bundle versions", file);
+        return Optional.empty();
+      }
+
+      return Optional.of(new Content<>(generation, reader.read(in)));
+    } catch (Throwable e) {
+      LOGGER.warn("Ignoring replay snapshot '{}': {}", file, e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  public static void writeIdentifier(DataOutputStream out, Identifier identifier)
+      throws IOException {
+    out.writeInt(identifier.path().size());
+    for (String segment : identifier.path()) {
+      out.writeUTF(segment);
+    }
+    out.writeUTF(identifier.id());
+  }
+
+  public static Identifier readIdentifier(DataInputStream in) throws IOException {
+    ImmutableIdentifier.Builder builder = ImmutableIdentifier.builder();
+    int pathSize = in.readInt();
+    for (int i = 0; i < pathSize; i++) {
+      builder.addPath(in.readUTF());
+    }
+
+    return builder.id(in.readUTF()).build();
+  }
+
+  public static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  public static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+
+    return bytes;
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.app;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Subscribers may only start when all JacksonSubTypeIds are registered, otherwise the replay
+ * cannot be decoded. Opens after at least {@link #MIN_WAIT} ms, when the framework has started and
+ * no subtype ids arrived for {@link #SETTLE_TIME} ms, but at the latest after {@link #MAX_WAIT} ms.
+ *
+ * <p>This is a heuristic, it does not know which subtype ids are actually required, so it never
+ * opens earlier than the fixed delay it replaces. Once open, it stays open, so subscribers or
+ * subtype ids that arrive later, e.g. from bundles installed at runtime, are not waited for.
+ */
+class SubscriberBarrier {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SubscriberBarrier.class);
+  static final long MIN_WAIT = 10000;
+  static final long SETTLE_TIME = 1000;
+  static final long MAX_WAIT = 30000;
+  private static final long CHECK_INTERVAL = 100;
+
+  private final BundleContext bundleContext;
+  private final CompletableFuture<Void> ready;
+  private final long createdAt;
+  private final FrameworkListener frameworkListener;
+  private volatile boolean isFrameworkStarted;
+  private volatile long lastArrival;
+
+  SubscriberBarrier(BundleContext bundleContext, ScheduledExecutorService executorService) {
+    this.bundleContext = bundleContext;
+    this.ready = new CompletableFuture<>();
+    this.createdAt = System.currentTimeMillis();
+    this.lastArrival = createdAt;
+    this.frameworkListener =
+        event -> {
+          if (event.getType() == FrameworkEvent.STARTED) {
+            this.isFrameworkStarted = true;
+          }
+        };
+
+    bundleContext.addFrameworkListener(frameworkListener);
+    this.isFrameworkStarted = bundleContext.getBundle(0).getState() == Bundle.ACTIVE;
+
+    ScheduledFuture<?> check =
+        executorService.scheduleWithFixedDelay(
+            this::check, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    ready.whenComplete((result, throwable) -> check.cancel(false));
+  }
+
+  void onArrival() {
+    this.lastArrival = System.currentTimeMillis();
+  }
+
+  CompletableFuture<Void> whenReady() {
+    return ready;
+  }
+
+  private void check() {
+    long now = System.currentTimeMillis();
+    boolean isSettled =
+        now - createdAt >= MIN_WAIT && isFrameworkStarted && now - lastArrival >= SETTLE_TIME;
+    boolean isTimedOut = now - createdAt >= MAX_WAIT;
+
+    if (!isSettled && !isTimedOut) {
+      return;
+    }
+
+    if (!isSettled && LOGGER.isDebugEnabled()) {
+      LOGGER.debug("Starting event store subscribers after timeout of {}ms", MAX_WAIT);
+    }
+
+    try {
+      bundleContext.removeFrameworkListener(frameworkListener);
+    } catch (IllegalStateException e) {
+      // bundle already stopped
+    }
+
+    ready.complete(null);
+  }
+}
@@ -8,6 +8,7 @@
 package de.ii.xtraplatform.store.app;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import de.ii.xtraplatform.store.domain.Identifier;
 import de.ii.xtraplatform.store.domain.ValueCache;
 import de.ii.xtraplatform.store.domain.ValueDecoderMiddleware;
@@ -28,16 +29,33 @@ public class ValueDecoderBase<T> implements ValueDecoderMiddleware<T> {
   public T process(
       Identifier identifier, byte[] payload, ObjectMapper objectMapper, T data, boolean ignoreCache)
       throws IOException {
-    T data2 = null;
-
-    if (valueCache.isInCache(identifier) && !ignoreCache) {
-      data2 = valueCache.getFromCache(identifier);
-    } else {
-      data2 = newInstanceSupplier.apply(identifier);
-    }
+    T data2 = getInstance(identifier, ignoreCache);
 
     objectMapper.readerForUpdating(data2).readValue(payload);
 
     return data2;
   }
+
+  @Override
+  public T process(
+      Identifier identifier,
+      TokenBuffer payload,
+      ObjectMapper objectMapper,
+      T data,
+      boolean ignoreCache)
+      throws IOException {
+    T data2 = getInstance(identifier, ignoreCache);
+
+    objectMapper.readerForUpdating(data2).readValue(payload.asParser());
+
+    return data2;
+  }
+
+  private T getInstance(Identifier identifier, boolean ignoreCache) {
+    if (valueCache.isInCache(identifier) && !ignoreCache) {
+      return valueCache.getFromCache(identifier);
+    }
+
+    return newInstanceSupplier.apply(identifier);
+  }
 }
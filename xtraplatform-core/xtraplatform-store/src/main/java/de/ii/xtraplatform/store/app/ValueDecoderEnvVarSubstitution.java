@@ -32,9 +32,24 @@ public class ValueDecoderEnvVarSubstitution implements ValueDecoderMiddleware<by
       boolean ignoreCache)
       throws IOException {
 
+    // most payloads contain no variables, they are passed on without copies
+    if (!containsVariable(payload)) {
+      return payload;
+    }
+
     final String config = new String(payload, StandardCharsets.UTF_8);
     final String substituted = substitutor.replace(config);
 
     return substituted.getBytes(StandardCharsets.UTF_8);
   }
+
+  static boolean containsVariable(byte[] payload) {
+    for (int i = 0; i < payload.length - 1; i++) {
+      if (payload[i] == '$' && payload[i + 1] == '{') {
+        return true;
+      }
+    }
+
+    return false;
+  }
 }
@@ -8,6 +8,7 @@
 package de.ii.xtraplatform.store.app;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import de.ii.xtraplatform.store.domain.Builder;
 import de.ii.xtraplatform.store.domain.Identifier;
 import de.ii.xtraplatform.store.domain.Value;
@@ -31,14 +32,35 @@ public class ValueDecoderWithBuilder<T extends Value> implements ValueDecoderMid
   public T process(
       Identifier identifier, byte[] payload, ObjectMapper objectMapper, T data, boolean ignoreCache)
       throws IOException {
+    Builder<T> builder = getBuilder(identifier, ignoreCache);
+
+    objectMapper.readerForUpdating(builder).readValue(payload);
+
+    return builder.build();
+  }
+
+  @Override
+  public T process(
+      Identifier identifier,
+      TokenBuffer payload,
+      ObjectMapper objectMapper,
+      T data,
+      boolean ignoreCache)
+      throws IOException {
+    Builder<T> builder = getBuilder(identifier, ignoreCache);
+
+    objectMapper.readerForUpdating(builder).readValue(payload.asParser());
+
+    return builder.build();
+  }
+
+  private Builder<T> getBuilder(Identifier identifier, boolean ignoreCache) {
     Builder<T> builder = newBuilderSupplier.apply(identifier);
 
     if (valueCache.isInCache(identifier) && !ignoreCache) {
       builder.from(valueCache.getFromCache(identifier));
     }
 
-    objectMapper.readerForUpdating(builder).readValue(payload);
-
-    return builder.build();
+    return builder;
   }
 }
@@ -17,6 +17,8 @@ import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.core.io.IOContext;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
 import com.google.common.collect.ImmutableMap;
@@ -27,7 +29,6 @@ import de.ii.xtraplatform.store.domain.ValueDecoderMiddleware;
 import de.ii.xtraplatform.store.domain.ValueEncoding;
 import java.io.IOException;
 import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
@@ -48,15 +49,14 @@ public class ValueEncodingJackson<T> implements ValueEncoding<T> {
 
   public static final byte[] JSON_NULL = "null".getBytes();
   public static final byte[] YAML_NULL = "--- null\n".getBytes();
-  private static final Pattern JSON_EMPTY = Pattern.compile("(\\s)*");
-  private static final Pattern YAML_EMPTY = Pattern.compile("---(\\s)*");
 
   private static final FORMAT DEFAULT_FORMAT = FORMAT.YML;
+  private static final FORMAT INTERNAL_FORMAT = FORMAT.SMILE;
   private static final FORMAT DESER_FORMAT_LEGACY =
       FORMAT.JSON; // old configuration files without file extension are JSON
 
-  private final Map<FORMAT, ObjectMapper>
-      mappers; // TODO: use smile/ion mapper for distributed store
+  private final Map<FORMAT, ObjectMapper> mappers;
+  private final byte[] smileNull;
   private final List<ValueDecoderMiddleware<byte[]>> decoderPreProcessor;
   private final List<ValueDecoderMiddleware<T>> decoderMiddleware;
 
@@ -85,11 +85,29 @@ public class ValueEncodingJackson<T> implements ValueEncoding<T> {
             .setDefaultMergeable(true)
             .setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
 
+    // binary format for internal round-trips and snapshots, never used for files edited by humans
+    ObjectMapper smileMapper =
+        jackson
+            .getNewObjectMapper(new SmileFactory())
+            .registerModule(DESERIALIZE_IMMUTABLE_BUILDER_NESTED)
+            .registerModule(DESERIALIZE_MERGEABLE_MAP_BUILDER_WRAPPER)
+            .registerModule(DESERIALIZE_API_BUILDINGBLOCK_MIGRATION)
+            .setDefaultMergeable(true)
+            .setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+
     this.mappers =
         ImmutableMap.of(
             FORMAT.JSON, jsonMapper,
             FORMAT.YML, yamlMapper,
-            FORMAT.YAML, yamlMapper);
+            FORMAT.YAML, yamlMapper,
+            FORMAT.SMILE, smileMapper);
+
+    try {
+      this.smileNull = smileMapper.writeValueAsBytes(null);
+    } catch (JsonProcessingException e) {
+      // should never happen
+      throw new IllegalStateException("Unexpected serialization error", e);
+    }
 
     this.decoderMiddleware = new ArrayList<>();
     this.decoderPreProcessor = new ArrayList<>();
@@ -129,6 +147,24 @@ public class ValueEncodingJackson<T> implements ValueEncoding<T> {
     }
   }
 
+  public final byte[] serialize(T data, FORMAT format) {
+    try {
+      return getMapper(format).writeValueAsBytes(data);
+    } catch (JsonProcessingException e) {
+      // should never happen
+      throw new IllegalStateException("Unexpected serialization error", e);
+    }
+  }
+
+  public byte[] serialize(Map<String, Object> data, FORMAT format) {
+    try {
+      return getMapper(format).writeValueAsBytes(data);
+    } catch (JsonProcessingException e) {
+      // should never happen
+      throw new IllegalStateException("Unexpected serialization error", e);
+    }
+  }
+
   @Override
   public final T deserialize(
       Identifier identifier, byte[] payload, FORMAT format, boolean ignoreCache)
@@ -143,8 +179,11 @@ public class ValueEncodingJackson<T> implements ValueEncoding<T> {
     ObjectMapper objectMapper = getMapper(payloadFormat);
     T data = null;
 
-    for (ValueDecoderMiddleware<byte[]> preProcessor : decoderPreProcessor) {
-      rawData = preProcessor.process(identifier, rawData, objectMapper, null, ignoreCache);
+    // binary payloads are only produced internally from already processed values
+    if (!payloadFormat.isBinary()) {
+      for (ValueDecoderMiddleware<byte[]> preProcessor : decoderPreProcessor) {
+        rawData = preProcessor.process(identifier, rawData, objectMapper, null, ignoreCache);
+      }
     }
 
     try {
@@ -169,6 +208,49 @@ public class ValueEncodingJackson<T> implements ValueEncoding<T> {
     return data;
   }
 
+  /** Serializes data to an in-memory token stream, used for internal conversions. */
+  public final TokenBuffer toTokens(Object data) throws IOException {
+    ObjectMapper objectMapper = getMapper(INTERNAL_FORMAT);
+    TokenBuffer tokens = new TokenBuffer(objectMapper, false);
+    objectMapper.writeValue(tokens, data);
+
+    return tokens;
+  }
+
+  /**
+   * Same as {@link #deserialize(Identifier, byte[], FORMAT, boolean)} for a token stream from
+   * {@link #toTokens(Object)}, without preprocessors.
+   */
+  public final T fromTokens(Identifier identifier, TokenBuffer payload, boolean ignoreCache)
+      throws IOException {
+    ObjectMapper objectMapper = getMapper(INTERNAL_FORMAT);
+    T data = null;
+
+    try {
+      for (ValueDecoderMiddleware<T> middleware : decoderMiddleware) {
+        data = middleware.process(identifier, payload, objectMapper, data, ignoreCache);
+      }
+
+    } catch (Throwable e) {
+      Optional<ValueDecoderMiddleware<T>> recovery =
+          decoderMiddleware.stream().filter(ValueDecoderMiddleware::canRecover).findFirst();
+      if (recovery.isPresent()) {
+        try {
+          data =
+              recovery
+                  .get()
+                  .recover(identifier, objectMapper.writeValueAsBytes(payload), objectMapper);
+        } catch (Throwable e2) {
+          throw e;
+        }
+      } else {
+        throw e;
+      }
+    }
+
+    return data;
+  }
+
   @Override
   public byte[] nestPayload(
       byte[] payload,
@@ -218,13 +300,24 @@ public class ValueEncodingJackson<T> implements ValueEncoding<T> {
   }
 
   final boolean isNull(byte[] payload) {
-    return Arrays.equals(payload, JSON_NULL) || Arrays.equals(payload, YAML_NULL);
+    return Arrays.equals(payload, JSON_NULL)
+        || Arrays.equals(payload, YAML_NULL)
+        || Arrays.equals(payload, smileNull);
   }
 
+  // only whitespace, optionally after a yaml document start, checked without decoding the payload
   public final boolean isEmpty(byte[] payload) {
-    String payloadString = new String(payload, StandardCharsets.UTF_8);
-    return JSON_EMPTY.matcher(payloadString).matches()
-        || YAML_EMPTY.matcher(payloadString).matches();
+    int start =
+        payload.length >= 3 && payload[0] == '-' && payload[1] == '-' && payload[2] == '-' ? 3 : 0;
+
+    for (int i = start; i < payload.length; i++) {
+      byte b = payload[i];
+      if (b != ' ' && b != '\t' && b != '\n' && b != 0x0B && b != '\f' && b != '\r') {
+        return false;
+      }
+    }
+
+    return true;
   }
 
   @Deprecated // can be removed after upgrade to Jackson 2.10 / Dropwizard 2.x (edit: check if
@@ -10,6 +10,7 @@ package de.ii.xtraplatform.store.app.entities;
 import static de.ii.xtraplatform.dropwizard.domain.LambdaWithException.biConsumerMayThrow;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -41,12 +42,15 @@ import de.ii.xtraplatform.store.domain.entities.EntityDataDefaultsStore;
 import de.ii.xtraplatform.store.domain.entities.EntityFactory;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.felix.ipojo.annotations.Component;
@@ -64,6 +68,7 @@ public class EntityDataDefaultsStoreImpl extends AbstractMergeableKeyValueStore<
     implements EntityDataDefaultsStore {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(EntityDataDefaultsStoreImpl.class);
+  private static final ValueEncoding.FORMAT INTERNAL_FORMAT = ValueEncoding.FORMAT.SMILE;
 
   private final EntityFactory entityFactory;
   private final ValueEncodingJackson<Map<String, Object>> valueEncoding;
@@ -72,6 +77,9 @@ public class EntityDataDefaultsStoreImpl extends AbstractMergeableKeyValueStore<
   private final ValueEncodingJackson<EntityData> valueEncodingEntity;
   private final EventSourcing<Map<String, Object>> eventSourcing;
   private final EventStore eventStore;
+  // merged defaults per entity type and subtype, outdated by every defaults event
+  private final Map<Identifier, CompiledDefaults> compiledDefaults;
+  private final AtomicLong defaultsGeneration;
 
   protected EntityDataDefaultsStoreImpl(
       @Requires EventStore eventStore,
@@ -79,6 +87,8 @@ public class EntityDataDefaultsStoreImpl extends AbstractMergeableKeyValueStore<
       @Requires EntityFactory entityFactory) {
     this.entityFactory = entityFactory;
     this.eventStore = eventStore;
+    this.compiledDefaults = new ConcurrentHashMap<>();
+    this.defaultsGeneration = new AtomicLong();
     this.valueEncoding = new ValueEncodingJackson<>(jackson);
     this.eventSourcing =
         new EventSourcing<>(
@@ -168,6 +178,8 @@ public class EntityDataDefaultsStoreImpl extends AbstractMergeableKeyValueStore<
       return Stream.empty();
     }
 
+    invalidateCompiledDefaults();
+
     EntityDataDefaultsPath defaultsPath = EntityDataDefaultsPath.from(event.identifier());
 
     List<String> subTypes =
@@ -233,27 +245,10 @@ public class EntityDataDefaultsStoreImpl extends AbstractMergeableKeyValueStore<
       Map<String, Object> data,
       List<String> ignoreKeys) {
 
-    Identifier defaultsIdentifier =
-        subType.isPresent()
-            ? ImmutableIdentifier.builder()
-                .id(EntityDataDefaultsStore.EVENT_TYPE)
-                .addAllPath(identifier.path())
-                .addPath(subType.get().toLowerCase())
-                .build()
-            : ImmutableIdentifier.builder()
-                .id(EntityDataDefaultsStore.EVENT_TYPE)
-                .addAllPath(identifier.path())
-                .build();
-
-    EntityDataBuilder<EntityData> newBuilder =
-        getBuilder(defaultsIdentifier).fillRequiredFieldsWithPlaceholders();
+    Identifier defaultsIdentifier = getDefaultsIdentifier(identifier, subType);
 
     try {
-      byte[] payload = valueEncodingEntity.serialize(newBuilder.build());
-
-      Map<String, Object> defaults =
-          valueEncodingMap.deserialize(
-              defaultsIdentifier, payload, valueEncodingBuilder.getDefaultFormat(), false);
+      Map<String, Object> defaults = getDefaultsWithPlaceholders(defaultsIdentifier);
 
       return new MapSubtractor().subtract(data, defaults, ignoreKeys);
 
@@ -268,45 +263,93 @@ public class EntityDataDefaultsStoreImpl extends AbstractMergeableKeyValueStore<
   public Optional<Map<String, Object>> getAllDefaults(
       Identifier identifier, Optional<String> subType) {
 
-    Identifier defaultsIdentifier =
-        subType.isPresent()
-            ? ImmutableIdentifier.builder()
-                .id(EntityDataDefaultsStore.EVENT_TYPE)
-                .addAllPath(identifier.path())
-                .addPath(subType.get().toLowerCase())
-                .build()
-            : ImmutableIdentifier.builder()
-                .id(EntityDataDefaultsStore.EVENT_TYPE)
-                .addAllPath(identifier.path())
-                .build();
+    Identifier defaultsIdentifier = getDefaultsIdentifier(identifier, subType);
 
-    Optional<EntityDataBuilder<EntityData>> newBuilder =
-        Optional.ofNullable(getBuilder(defaultsIdentifier).fillRequiredFieldsWithPlaceholders());
+    try {
+      Map<String, Object> defaults = getDefaultsWithPlaceholders(defaultsIdentifier);
 
-    if (newBuilder.isPresent()) {
-      try {
-        EntityData data = newBuilder.get().build();
+      // TODO
+      defaults =
+          defaults.entrySet().stream()
+              .filter(entry -> !Objects.equals(entry.getValue(), "__DEFAULT__"))
+              .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
 
-        byte[] payload = valueEncodingEntity.serialize(data);
+      return Optional.ofNullable(defaults);
 
-        Map<String, Object> defaults =
-            valueEncodingMap.deserialize(
-                defaultsIdentifier, payload, valueEncodingBuilder.getDefaultFormat(), false);
+    } catch (Throwable e) {
+      boolean br = true;
+    }
 
-        // TODO
-        defaults =
-            defaults.entrySet().stream()
-                .filter(entry -> !Objects.equals(entry.getValue(), "__DEFAULT__"))
-                .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
+    return Optional.empty();
+  }
 
-        return Optional.ofNullable(defaults);
+  private Identifier getDefaultsIdentifier(Identifier identifier, Optional<String> subType) {
+    return subType.isPresent()
+        ? ImmutableIdentifier.builder()
+            .id(EntityDataDefaultsStore.EVENT_TYPE)
+            .addAllPath(identifier.path())
+            .addPath(subType.get().toLowerCase())
+            .build()
+        : ImmutableIdentifier.builder()
+            .id(EntityDataDefaultsStore.EVENT_TYPE)
+            .addAllPath(identifier.path())
+            .build();
+  }
 
-      } catch (Throwable e) {
-        boolean br = true;
-      }
+  // as map, including placeholders for required fields, so it can be subtracted without decoding
+  private Map<String, Object> getDefaultsWithPlaceholders(Identifier defaultsIdentifier)
+      throws IOException {
+    Optional<CompiledDefaults> compiled = getCompiledDefaults(defaultsIdentifier);
+
+    if (compiled.isPresent() && Objects.nonNull(compiled.get().withPlaceholders)) {
+      return compiled.get().withPlaceholders;
     }
 
-    return Optional.empty();
+    EntityDataBuilder<EntityData> newBuilder =
+        getBuilder(defaultsIdentifier).fillRequiredFieldsWithPlaceholders();
+    Map<String, Object> defaults =
+        Collections.unmodifiableMap(
+            valueEncodingMap.fromTokens(
+                defaultsIdentifier, valueEncodingEntity.toTokens(newBuilder.build()), false));
+
+    compiled.ifPresent(current -> current.withPlaceholders = defaults);
+
+    return defaults;
+  }
+
+  private Optional<CompiledDefaults> getCompiledDefaults(Identifier identifier) {
+    if (!eventSourcing.isInCache(identifier)) {
+      return Optional.empty();
+    }
+
+    long generation = defaultsGeneration.get();
+    CompiledDefaults compiled = compiledDefaults.get(identifier);
+
+    if (Objects.isNull(compiled) || compiled.generation != generation) {
+      compiled =
+          new CompiledDefaults(
+              generation, valueEncodingBuilder.toTokens(eventSourcing.getFromCache(identifier)));
+      compiledDefaults.put(identifier, compiled);
+    }
+
+    return Optional.of(compiled);
+  }
+
+  // cached values are updated in place, so readers compare generations instead of instances
+  private void invalidateCompiledDefaults() {
+    defaultsGeneration.incrementAndGet();
+    compiledDefaults.clear();
+  }
+
+  private static class CompiledDefaults {
+    private final long generation;
+    private final TokenBuffer tokens;
+    private volatile Map<String, Object> withPlaceholders;
+
+    private CompiledDefaults(long generation, TokenBuffer tokens) {
+      this.generation = generation;
+      this.tokens = tokens;
+    }
   }
 
   private Map<String, Object> getDefaults(Identifier identifier) {
@@ -329,13 +372,11 @@ public class EntityDataDefaultsStoreImpl extends AbstractMergeableKeyValueStore<
   @Override
   public EntityDataBuilder<EntityData> getBuilder(Identifier identifier) {
 
-    if (eventSourcing.isInCache(identifier)) {
-      Map<String, Object> defaults = eventSourcing.getFromCache(identifier);
-      byte[] payload = valueEncodingBuilder.serialize(defaults);
+    Optional<CompiledDefaults> compiled = getCompiledDefaults(identifier);
 
+    if (compiled.isPresent()) {
       try {
-        return valueEncodingBuilder.deserialize(
-            identifier, payload, valueEncodingBuilder.getDefaultFormat(), false);
+        return valueEncodingBuilder.fromTokens(identifier, compiled.get().tokens, false);
       } catch (IOException e) {
         LogContext.error(LOGGER, e, "Cannot load defaults for '{}'", identifier.asPath());
       }
@@ -346,9 +387,12 @@ public class EntityDataDefaultsStoreImpl extends AbstractMergeableKeyValueStore<
 
   private void validateDefaults(Identifier identifier, Map<String, Object> defaults)
       throws IOException {
-    byte[] payload = valueEncodingBuilder.serialize(defaults);
-    valueEncodingBuilder.deserialize(
-        identifier, payload, valueEncodingBuilder.getDefaultFormat(), false);
+    try {
+      valueEncodingBuilder.fromTokens(identifier, valueEncodingBuilder.toTokens(defaults), false);
+    } finally {
+      // the value was merged in place, readers might have compiled an intermediate state
+      invalidateCompiledDefaults();
+    }
   }
 
   @Override
@@ -405,18 +449,17 @@ public class EntityDataDefaultsStoreImpl extends AbstractMergeableKeyValueStore<
       if (newBuilder.isPresent()) {
         try {
 
-          ObjectMapper mapper =
-              valueEncodingEntity.getMapper(valueEncodingEntity.getDefaultFormat());
-
-          byte[] serialize = valueEncodingEntity.serialize(partialData);
-
-          mapper.readerForUpdating(newBuilder.get()).readValue(serialize);
+          ObjectMapper mapper = valueEncodingEntity.getMapper(INTERNAL_FORMAT);
 
-          byte[] payload = valueEncodingEntity.serialize(newBuilder.get().build());
+          mapper
+              .readerForUpdating(newBuilder.get())
+              .readValue(valueEncodingEntity.toTokens(partialData).asParser());
 
           defaults =
-              valueEncodingMap.deserialize(
-                  defaultsIdentifier, payload, valueEncodingBuilder.getDefaultFormat(), false);
+              valueEncodingMap.fromTokens(
+                  defaultsIdentifier,
+                  valueEncodingEntity.toTokens(newBuilder.get().build()),
+                  false);
 
           // TODO
           defaults =
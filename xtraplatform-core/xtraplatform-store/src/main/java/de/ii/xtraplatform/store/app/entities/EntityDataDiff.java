@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.app.entities;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.ii.xtraplatform.store.domain.entities.EntityData;
+import de.ii.xtraplatform.store.domain.entities.EntityDataChanges;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+class EntityDataDiff {
+
+  private EntityDataDiff() {}
+
+  static EntityDataChanges between(
+      ObjectMapper objectMapper, EntityData previous, EntityData next) {
+    List<String> paths = new ArrayList<>();
+
+    diff("", objectMapper.valueToTree(previous), objectMapper.valueToTree(next), paths);
+
+    return EntityDataChanges.of(paths);
+  }
+
+  private static void diff(String path, JsonNode previous, JsonNode next, List<String> paths) {
+    if (Objects.equals(previous, next)) {
+      return;
+    }
+
+    if (Objects.nonNull(previous)
+        && Objects.nonNull(next)
+        && previous.isObject()
+        && next.isObject()) {
+      Set<String> fields = new TreeSet<>();
+      previous.fieldNames().forEachRemaining(fields::add);
+      next.fieldNames().forEachRemaining(fields::add);
+
+      for (String field : fields) {
+        String fieldPath = path.isEmpty() ? field : path + "." + field;
+        diff(fieldPath, previous.get(field), next.get(field), paths);
+      }
+      return;
+    }
+
+    paths.add(path);
+  }
+}
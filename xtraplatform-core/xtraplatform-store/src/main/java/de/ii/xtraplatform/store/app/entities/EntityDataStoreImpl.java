@@ -11,7 +11,9 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.ObjectArrays;
+import de.ii.xtraplatform.dropwizard.domain.Dropwizard;
 import de.ii.xtraplatform.dropwizard.domain.Jackson;
+import de.ii.xtraplatform.dropwizard.domain.XtraPlatform;
 import de.ii.xtraplatform.runtime.domain.LogContext;
 import de.ii.xtraplatform.store.app.EventSourcing;
 import de.ii.xtraplatform.store.app.ValueDecoderBase;
@@ -40,7 +42,6 @@ import java.io.IOException;
 import java.time.Instant;
 import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -77,8 +78,11 @@ public class EntityDataStoreImpl extends AbstractMergeableKeyValueStore<EntityDa
   private final ValueEncodingJackson<Map<String, Object>> valueEncodingMap;
   private final EventSourcing<EntityData> eventSourcing;
   private final EntityDataDefaultsStore defaultsStore;
+  private final EntityScheduler scheduler;
 
   protected EntityDataStoreImpl(
+      @Requires XtraPlatform xtraPlatform,
+      @Requires Dropwizard dropwizard,
       @Requires EventStore eventStore,
       @Requires Jackson jackson,
       @Requires EntityFactory entityFactory,
@@ -96,8 +100,14 @@ public class EntityDataStoreImpl extends AbstractMergeableKeyValueStore<EntityDa
             this::onStart,
             Optional.of(this::processEvent),
             Optional.empty(),
-            Optional.of(this::onUpdate));
+            Optional.of(this::onUpdate),
+            Optional.empty(),
+            Optional.of(this::onReload));
     this.defaultsStore = defaultsStore;
+    this.scheduler =
+        new EntityScheduler(
+            xtraPlatform.getConfiguration().store.entityThreads,
+            dropwizard.getEnvironment().metrics());
 
     valueEncoding.addDecoderPreProcessor(new ValueDecoderEnvVarSubstitution());
     valueEncoding.addDecoderMiddleware(
@@ -250,19 +260,14 @@ public class EntityDataStoreImpl extends AbstractMergeableKeyValueStore<EntityDa
               }
               return CompletableFuture.completedFuture(null);
             })
-        .thenCompose(
-            ignore ->
-                identifiers().stream()
-                    // TODO: set priority per entity type (for now alphabetic works:
-                    //  codelists < providers < services)
-                    .sorted(Comparator.comparing(identifier -> identifier.path().get(0)))
-                    .reduce(
-                        CompletableFuture.completedFuture((Void) null),
-                        (completableFuture, identifier) ->
-                            completableFuture.thenCompose(
-                                ignore2 -> onCreate(identifier, get(identifier))),
-                        (first, second) -> first.thenCompose(ignore2 -> second)))
-        .thenCompose(entity -> CompletableFuture.completedFuture(null));
+        .thenCompose(ignore -> scheduler.run("create", identifiers(), this::get, this::onCreate))
+        // with lazy decoding, migrations only happen when entities are created
+        .thenCompose(ignore -> playAdditionalEvents())
+        .thenAccept(ignore -> {});
+  }
+
+  private CompletableFuture<Void> onReload(List<Identifier> identifiers) {
+    return scheduler.run("reload", identifiers, this::get, this::onUpdate);
   }
 
   private CompletableFuture<EntityData> playAdditionalEvents() {
@@ -366,15 +371,13 @@ public class EntityDataStoreImpl extends AbstractMergeableKeyValueStore<EntityDa
   @Override
   public Map<String, Object> asMap(Identifier identifier, EntityData entityData)
       throws IOException {
-    return valueEncodingMap.deserialize(
-        identifier, valueEncoding.serialize(entityData), valueEncoding.getDefaultFormat(), false);
+    return valueEncodingMap.fromTokens(identifier, valueEncoding.toTokens(entityData), false);
   }
 
   @Override
   public EntityData fromMap(Identifier identifier, Map<String, Object> entityData)
       throws IOException {
-    return valueEncoding.deserialize(
-        identifier, valueEncoding.serialize(entityData), valueEncoding.getDefaultFormat(), false);
+    return valueEncoding.fromTokens(identifier, valueEncoding.toTokens(entityData), false);
   }
 
   @Override
@@ -411,18 +414,21 @@ public class EntityDataStoreImpl extends AbstractMergeableKeyValueStore<EntityDa
 
     Map<String, Object> patch = modifyPatch(partialData);
 
-    byte[] payload = getValueEncoding().serialize(patch);
-
-    // validate
-    if (!isUpdateValid(identifier, payload)) {
+    // validate and merge in one pass
+    EntityData merged;
+    try {
+      merged =
+          getEventSourcing().isInCache(identifier)
+              ? valueEncoding.fromTokens(identifier, valueEncoding.toTokens(patch), false)
+              : null;
+    } catch (Throwable e) {
+      merged = null;
+    }
+    if (Objects.isNull(merged)) {
       throw new IllegalArgumentException("Partial update for ... not valid");
     }
 
     try {
-      EntityData merged =
-          getValueEncoding()
-              .deserialize(identifier, payload, getValueEncoding().getDefaultFormat(), false);
-
       Map<String, Object> map = asMap(identifier, merged);
 
       Map<String, Object> withoutDefaults =
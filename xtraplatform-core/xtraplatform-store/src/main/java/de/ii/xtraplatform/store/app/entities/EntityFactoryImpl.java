@@ -7,24 +7,30 @@
  */
 package de.ii.xtraplatform.store.app.entities;
 
-import static de.ii.xtraplatform.runtime.domain.LogContext.withMdc;
-
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import de.ii.xtraplatform.dropwizard.domain.Dropwizard;
+import de.ii.xtraplatform.dropwizard.domain.Jackson;
 import de.ii.xtraplatform.runtime.domain.LogContext;
 import de.ii.xtraplatform.runtime.domain.LogContext.MARKER;
 import de.ii.xtraplatform.store.domain.Identifier;
 import de.ii.xtraplatform.store.domain.KeyPathAlias;
+import de.ii.xtraplatform.store.domain.entities.AbstractPersistentEntity;
 import de.ii.xtraplatform.store.domain.entities.EntityData;
 import de.ii.xtraplatform.store.domain.entities.EntityDataBuilder;
+import de.ii.xtraplatform.store.domain.entities.EntityDataChanges;
 import de.ii.xtraplatform.store.domain.entities.EntityDataDefaults;
 import de.ii.xtraplatform.store.domain.entities.EntityFactory;
 import de.ii.xtraplatform.store.domain.entities.EntityHydrator;
+import de.ii.xtraplatform.store.domain.entities.EntityLifecyclePool;
 import de.ii.xtraplatform.store.domain.entities.EntityMigration;
 import de.ii.xtraplatform.store.domain.entities.EntityRegistry;
+import de.ii.xtraplatform.store.domain.entities.EntityState;
 import de.ii.xtraplatform.store.domain.entities.EntityState.STATE;
 import de.ii.xtraplatform.store.domain.entities.PersistentEntity;
 import de.ii.xtraplatform.store.domain.entities.handler.Entity;
@@ -38,13 +44,11 @@ import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import org.apache.felix.ipojo.ComponentFactory;
 import org.apache.felix.ipojo.ComponentInstance;
 import org.apache.felix.ipojo.Factory;
+import org.apache.felix.ipojo.InstanceStateListener;
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Context;
 import org.apache.felix.ipojo.annotations.Instantiate;
@@ -84,18 +88,24 @@ import org.slf4j.MDC;
       @Wbp(
           filter = "(objectClass=de.ii.xtraplatform.store.domain.entities.EntityDataDefaults)",
           onArrival = "onDefaultsArrival",
-          onDeparture = "onDefaultsDeparture")
+          onDeparture = "onDefaultsDeparture"),
+      @Wbp(
+          filter = "(objectClass=de.ii.xtraplatform.store.domain.entities.EntityState)",
+          onArrival = "onEntityStateArrival",
+          onDeparture = "onEntityStateDeparture")
     })
 // TODO: use generic registry implementation
 public class EntityFactoryImpl implements EntityFactory {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(EntityFactoryImpl.class);
+  // instances might be created asynchronously after publishing, give up if none appears
+  private static final int INSTANCE_TIMEOUT_SECONDS = 2;
 
   private final BundleContext context;
   private final DeclarationBuilderService declarationBuilderService;
   private final Map<String, DeclarationHandle> instanceHandles;
   private final Map<String, CompletableFuture<PersistentEntity>> instanceRegistration;
-  private final Map<String, Integer> instanceConfigurationHashes;
+  private final Map<String, EntityData> instanceConfigurations;
   private final Map<String, CompletableFuture<Void>> instanceReloadListeners;
   private final Map<String, ComponentFactory> componentFactories;
   private final Map<String, String> entityClasses;
@@ -104,18 +114,23 @@ public class EntityFactoryImpl implements EntityFactory {
   private final Map<String, EntityHydrator<EntityData>> entityHydrators;
   private final Map<String, Map<Long, EntityMigration<EntityData, EntityData>>> entityMigrations;
   private final Map<String, EntityDataDefaults<EntityData>> entityDataDefaults;
-  private final ScheduledExecutorService executorService;
   private final EntityRegistry entityRegistry;
+  private final EntityLifecyclePool lifecyclePool;
+  private final MetricRegistry metricRegistry;
+  private final ObjectMapper objectMapper;
 
   protected EntityFactoryImpl(
       @Context BundleContext context,
       @Requires DeclarationBuilderService declarationBuilderService,
-      @Requires EntityRegistry entityRegistry) {
+      @Requires EntityRegistry entityRegistry,
+      @Requires EntityLifecyclePool lifecyclePool,
+      @Requires Dropwizard dropwizard,
+      @Requires Jackson jackson) {
     this.context = context;
     this.declarationBuilderService = declarationBuilderService;
     this.instanceHandles = new ConcurrentHashMap<>();
     this.instanceRegistration = new ConcurrentHashMap<>();
-    this.instanceConfigurationHashes = new ConcurrentHashMap<>();
+    this.instanceConfigurations = new ConcurrentHashMap<>();
     this.instanceReloadListeners = new ConcurrentHashMap<>();
     this.componentFactories = new ConcurrentHashMap<>();
     this.entityClasses = new ConcurrentHashMap<>();
@@ -124,8 +139,10 @@ public class EntityFactoryImpl implements EntityFactory {
     this.entityHydrators = new ConcurrentHashMap<>();
     this.entityMigrations = new ConcurrentHashMap<>();
     this.entityDataDefaults = new ConcurrentHashMap<>();
-    this.executorService = new ScheduledThreadPoolExecutor(1);
     this.entityRegistry = entityRegistry;
+    this.lifecyclePool = lifecyclePool;
+    this.metricRegistry = dropwizard.getEnvironment().metrics();
+    this.objectMapper = jackson.getDefaultObjectMapper();
 
     entityRegistry.addEntityListener(
         (instanceId, entity) -> {
@@ -142,6 +159,12 @@ public class EntityFactoryImpl implements EntityFactory {
             if (instanceReloadListeners.containsKey(instanceId)) {
               instanceReloadListeners.get(instanceId).complete(null);
             }
+            // started, but will not be registered
+            if ((entityState.getState() == STATE.DEFECTIVE
+                    || entityState.getState() == STATE.DISABLED)
+                && instanceRegistration.containsKey(instanceId)) {
+              instanceRegistration.get(instanceId).complete(null);
+            }
           }
         });
   }
@@ -185,6 +208,50 @@ public class EntityFactoryImpl implements EntityFactory {
     }
   }
 
+  // the state service is published with the instance, so it can be observed from now on
+  private void onEntityStateArrival(ServiceReference<EntityState> ref) {
+    String instanceId = (String) ref.getProperty(Factory.INSTANCE_NAME_PROPERTY);
+    CompletableFuture<PersistentEntity> registration =
+        Objects.nonNull(instanceId) ? instanceRegistration.get(instanceId) : null;
+
+    if (Objects.isNull(registration) || registration.isDone()) {
+      return;
+    }
+
+    observeInstance(instanceId, registration);
+  }
+
+  // returns false if the instance does not exist (yet)
+  private boolean observeInstance(
+      String instanceId, CompletableFuture<PersistentEntity> registration) {
+    Optional<ComponentInstance> componentInstance =
+        componentFactories.values().stream()
+            .map(componentFactory -> componentFactory.getInstanceByName(instanceId))
+            .filter(Objects::nonNull)
+            .findFirst();
+
+    if (componentInstance.isEmpty()) {
+      return false;
+    }
+
+    ComponentInstance instance = componentInstance.get();
+    // called after all handlers, so a successful startup is already registered when the instance
+    // becomes valid, any other state means it never will be
+    InstanceStateListener listener = (ignore, state) -> registration.complete(null);
+    instance.addInstanceStateListener(listener);
+    registration.whenComplete(
+        (entity, throwable) -> instance.removeInstanceStateListener(listener));
+
+    // e.g. unresolved dependencies, there might never be a state change
+    if (instance.getState() != ComponentInstance.VALID) {
+      registration.complete(null);
+    }
+
+    return true;
+  }
+
+  private void onEntityStateDeparture(ServiceReference<EntityState> ref) {}
+
   private Optional<String> getComponentClass(ServiceReference<ComponentFactory> ref) {
     return Optional.ofNullable((String) ref.getProperty("component.class"));
   }
@@ -563,31 +630,48 @@ public class EntityFactoryImpl implements EntityFactory {
             .newInstance(instanceClassName)
             .name(instanceId)
             .configure()
-            .property(Entity.DATA_KEY, entityData);
+            .property(Entity.DATA_KEY, entityData)
+            .property(Entity.LIFECYCLE_POOL_KEY, lifecyclePool);
 
+    // completed by the entity registry or, for started but unregistered entities, by the state
+    // of the component instance
     CompletableFuture<PersistentEntity> registration = new CompletableFuture<>();
     this.instanceRegistration.put(instanceId, registration);
-
-    // check every 2 secs for started but unregistered entity, then proceed with null
-    ComponentFactory componentFactory = componentFactories.get(specificEntityType);
-    ScheduledFuture<?> scheduledFuture =
-        executorService.scheduleAtFixedRate(
-            withMdc(
-                () -> {
-                  if (Objects.nonNull(componentFactory.getInstanceByName(instanceId))) {
-                    registration.complete(null);
-                  }
-                }),
-            2,
-            2,
-            TimeUnit.SECONDS);
+    long createdAt = System.nanoTime();
 
     DeclarationHandle handle = instanceBuilder.build();
     handle.publish();
     this.instanceHandles.put(instanceId, handle);
-    this.instanceConfigurationHashes.put(instanceId, entityData.hashCode());
+    this.instanceConfigurations.put(instanceId, entityData);
+
+    if (!observeInstance(instanceId, registration)) {
+      CompletableFuture.delayedExecutor(INSTANCE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+          .execute(
+              () -> {
+                if (!registration.isDone() && !observeInstance(instanceId, registration)) {
+                  registration.complete(null);
+                }
+              });
+    }
 
-    return registration.whenComplete((entity, throwable) -> scheduledFuture.cancel(true));
+    return registration.whenComplete(
+        (entity, throwable) -> {
+          instanceRegistration.remove(instanceId, registration);
+
+          long duration = System.nanoTime() - createdAt;
+          metricRegistry
+              .timer(MetricRegistry.name(EntityFactoryImpl.class, "create", entityType))
+              .update(duration, TimeUnit.NANOSECONDS);
+
+          if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(
+                "Creation of {} '{}' took {}ms{}",
+                entityType,
+                id,
+                TimeUnit.NANOSECONDS.toMillis(duration),
+                Objects.isNull(entity) ? ", not registered" : "");
+          }
+        });
   }
 
   @Override
@@ -598,7 +682,9 @@ public class EntityFactoryImpl implements EntityFactory {
       String instanceId = entityType + "/" + id;
       String entityTypeSingular = entityType.substring(0, entityType.length() - 1);
 
-      if (Objects.equals(entityData.hashCode(), instanceConfigurationHashes.get(instanceId))) {
+      Optional<EntityDataChanges> changes = getChanges(instanceId, entityData);
+
+      if (changes.isPresent() && changes.get().isEmpty()) {
 
         LOGGER.info(
             "Not reloading configuration for {} with id '{}', no effective changes detected",
@@ -608,6 +694,17 @@ public class EntityFactoryImpl implements EntityFactory {
         return CompletableFuture.completedFuture(null);
       }
 
+      if (changes.isPresent() && reloadPartially(entityType, id, entityData, changes.get())) {
+        instanceConfigurations.put(instanceId, entityData);
+
+        LOGGER.info(
+            "Applied configuration changes for {} with id '{}' without restart",
+            entityTypeSingular,
+            id);
+
+        return CompletableFuture.completedFuture(null);
+      }
+
       LOGGER.info("Reloading configuration for {} with id '{}'", entityTypeSingular, id);
 
       String specificEntityType = getSpecificEntityType(entityType, entityData.getEntitySubType());
@@ -624,7 +721,7 @@ public class EntityFactoryImpl implements EntityFactory {
 
         try {
           componentFactory.reconfigure(configuration);
-          instanceConfigurationHashes.put(instanceId, entityData.hashCode());
+          instanceConfigurations.put(instanceId, entityData);
         } catch (Throwable e) {
           LogContext.error(LOGGER, e, "Could not reload configuration");
           reloaded.complete(null);
@@ -646,8 +743,40 @@ public class EntityFactoryImpl implements EntityFactory {
     if (instanceHandles.containsKey(instanceId)) {
       instanceHandles.get(instanceId).retract();
       instanceHandles.remove(instanceId);
-      instanceConfigurationHashes.remove(instanceId);
+      instanceConfigurations.remove(instanceId);
+    }
+  }
+
+  private Optional<EntityDataChanges> getChanges(String instanceId, EntityData entityData) {
+    EntityData previous = instanceConfigurations.get(instanceId);
+
+    if (Objects.isNull(previous)) {
+      return Optional.empty();
     }
+
+    try {
+      EntityDataChanges changes = EntityDataDiff.between(objectMapper, previous, entityData);
+
+      if (LOGGER.isDebugEnabled() && !changes.isEmpty()) {
+        LOGGER.debug("Changed configuration paths for '{}': {}", instanceId, changes.getPaths());
+      }
+
+      return Optional.of(changes);
+    } catch (Throwable e) {
+      // fall back to a full reload
+      LogContext.error(LOGGER, e, "Could not compare configurations for '{}'", instanceId);
+      return Optional.empty();
+    }
+  }
+
+  private boolean reloadPartially(
+      String entityType, String id, EntityData entityData, EntityDataChanges changes) {
+    Optional<PersistentEntity> entity = entityRegistry.getEntity(entityType, id);
+
+    return entity.isPresent()
+        && entity.get() instanceof AbstractPersistentEntity
+        && ((AbstractPersistentEntity<EntityData>) entity.get())
+            .reloadPartially(entityData, changes);
   }
 
   private String getSpecificEntityType(String entityType, Optional<String> entitySubType) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.app.entities;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.ii.xtraplatform.dropwizard.domain.Dropwizard;
+import de.ii.xtraplatform.dropwizard.domain.XtraPlatform;
+import de.ii.xtraplatform.store.domain.entities.EntityLifecyclePool;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Instantiate;
+import org.apache.felix.ipojo.annotations.Invalidate;
+import org.apache.felix.ipojo.annotations.Provides;
+import org.apache.felix.ipojo.annotations.Requires;
+import org.apache.felix.ipojo.annotations.Validate;
+
+/**
+ * Owns the threads for entity lifecycle tasks. Short tasks share a bounded pool, startups run on a
+ * separate bounded pool, so slow startups do not block other tasks. Idle threads time out, both
+ * pools are shut down with the store.
+ */
+@Component(publicFactory = false)
+@Provides
+@Instantiate
+public class EntityLifecyclePoolImpl implements EntityLifecyclePool {
+
+  private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+  private final MetricRegistry metricRegistry;
+  private final int startupThreads;
+  private volatile ThreadPoolExecutor executor;
+  private volatile ThreadPoolExecutor startupExecutor;
+
+  protected EntityLifecyclePoolImpl(
+      @Requires XtraPlatform xtraPlatform, @Requires Dropwizard dropwizard) {
+    this.metricRegistry = dropwizard.getEnvironment().metrics();
+    this.startupThreads = xtraPlatform.getConfiguration().store.startupThreads;
+  }
+
+  @Validate
+  private void onStart() {
+    this.executor =
+        new ThreadPoolExecutor(
+            THREADS,
+            THREADS,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("entity.lifecycle-%d").build());
+    executor.allowCoreThreadTimeOut(true);
+    this.startupExecutor =
+        new ThreadPoolExecutor(
+            startupThreads,
+            startupThreads,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("entity.startup-%d").build());
+    startupExecutor.allowCoreThreadTimeOut(true);
+
+    registerGauge("queue", () -> executor.getQueue().size());
+    registerGauge("active", () -> executor.getActiveCount());
+    registerGauge("startups", () -> startupExecutor.getActiveCount());
+    registerGauge("startupQueue", () -> startupExecutor.getQueue().size());
+  }
+
+  @Invalidate
+  private void onStop() {
+    executor.shutdownNow();
+    startupExecutor.shutdownNow();
+  }
+
+  @Override
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  @Override
+  public Executor getStartupExecutor() {
+    return startupExecutor;
+  }
+
+  @Override
+  public void recordStartup(String entityType, long millis) {
+    metricRegistry
+        .timer(MetricRegistry.name("entities", entityType, "startup"))
+        .update(millis, TimeUnit.MILLISECONDS);
+  }
+
+  private void registerGauge(String name, Gauge<Integer> gauge) {
+    String fullName = MetricRegistry.name(EntityLifecyclePool.class, name);
+
+    // the registry outlives the store
+    metricRegistry.remove(fullName);
+    metricRegistry.register(fullName, gauge);
+  }
+}
@@ -14,7 +14,7 @@ import de.ii.xtraplatform.store.domain.entities.EntityRegistry;
 import de.ii.xtraplatform.store.domain.entities.EntityState;
 import de.ii.xtraplatform.store.domain.entities.PersistentEntity;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -55,6 +55,11 @@ public class EntityRegistryImpl implements EntityRegistry {
 
   private final BundleContext context;
   private final Set<PersistentEntity> entities;
+  // type -> id -> entity
+  private final Map<String, Map<String, PersistentEntity>> entitiesByType;
+  // built on lookup, outdated by every arrival and departure
+  private final Map<Class<?>, ClassIndex> entitiesByClass;
+  private volatile long generation;
   private final Map<String, EntityState> entityStates;
   private final List<BiConsumer<String, PersistentEntity>> entityListeners;
   private final List<Consumer<PersistentEntity>> entityGoneListeners;
@@ -62,7 +67,10 @@ public class EntityRegistryImpl implements EntityRegistry {
 
   public EntityRegistryImpl(@Context BundleContext context) {
     this.context = context;
-    this.entities = new HashSet<>();
+    this.entities = ConcurrentHashMap.newKeySet();
+    this.entitiesByType = new ConcurrentHashMap<>();
+    this.entitiesByClass = new ConcurrentHashMap<>();
+    this.generation = 0;
     this.entityStates = new ConcurrentHashMap<>();
     this.entityListeners = new ArrayList<>();
     this.entityGoneListeners = new ArrayList<>();
@@ -75,6 +83,10 @@ public class EntityRegistryImpl implements EntityRegistry {
 
       if (Objects.nonNull(entity)) {
         entities.add(entity);
+        entitiesByType
+            .computeIfAbsent(entity.getType(), ignore -> new ConcurrentHashMap<>())
+            .put(entity.getId(), entity);
+        this.generation++;
 
         if (LOGGER.isDebugEnabled(MARKER.DI)) {
           LOGGER.debug(MARKER.DI, "Registered entity: {} {}", entity.getClass(), entity.getId());
@@ -95,6 +107,10 @@ public class EntityRegistryImpl implements EntityRegistry {
       entityGoneListeners.forEach(listener -> listener.accept(entity));
 
       entities.remove(entity);
+      if (entitiesByType.containsKey(entity.getType())) {
+        entitiesByType.get(entity.getType()).remove(entity.getId(), entity);
+      }
+      this.generation++;
 
       if (LOGGER.isDebugEnabled(MARKER.DI)) {
         LOGGER.debug(MARKER.DI, "Deregistered entity: {} {}", entity.getClass(), entity.getId());
@@ -138,31 +154,51 @@ public class EntityRegistryImpl implements EntityRegistry {
 
   @Override
   public <T extends PersistentEntity> List<T> getEntitiesForType(Class<T> type) {
-    return entities.stream()
-        .filter(persistentEntity -> type.isAssignableFrom(persistentEntity.getClass()))
-        .map(type::cast)
-        .collect(ImmutableList.toImmutableList());
+    // only contains instances of type
+    return (List<T>) getClassIndex(type).entities;
   }
 
   @Override
   public <T extends PersistentEntity> Optional<T> getEntity(Class<T> type, String id) {
-    return entities.stream()
-        .filter(
-            persistentEntity ->
-                type.isAssignableFrom(persistentEntity.getClass())
-                    && persistentEntity.getId().equals(id))
-        .map(type::cast)
-        .findFirst();
+    return Optional.ofNullable(getClassIndex(type).entitiesById.get(id)).map(type::cast);
   }
 
   @Override
   public Optional<PersistentEntity> getEntity(String type, String id) {
-    return entities.stream()
-        .filter(
-            persistentEntity ->
-                Objects.equals(type, persistentEntity.getType())
-                    && Objects.equals(id, persistentEntity.getId()))
-        .findFirst();
+    Map<String, PersistentEntity> entitiesById = entitiesByType.get(type);
+
+    return Objects.nonNull(entitiesById) && Objects.nonNull(id)
+        ? Optional.ofNullable(entitiesById.get(id))
+        : Optional.empty();
+  }
+
+  private ClassIndex getClassIndex(Class<?> type) {
+    long currentGeneration = generation;
+    ClassIndex classIndex = entitiesByClass.get(type);
+
+    if (Objects.isNull(classIndex) || classIndex.generation != currentGeneration) {
+      classIndex = new ClassIndex(type, entities, currentGeneration);
+      entitiesByClass.put(type, classIndex);
+    }
+
+    return classIndex;
+  }
+
+  private static class ClassIndex {
+    private final long generation;
+    private final List<PersistentEntity> entities;
+    private final Map<String, PersistentEntity> entitiesById;
+
+    private ClassIndex(Class<?> type, Set<PersistentEntity> allEntities, long generation) {
+      this.generation = generation;
+      this.entities =
+          allEntities.stream()
+              .filter(persistentEntity -> type.isAssignableFrom(persistentEntity.getClass()))
+              .collect(ImmutableList.toImmutableList());
+      this.entitiesById = new LinkedHashMap<>();
+
+      entities.forEach(entity -> entitiesById.putIfAbsent(entity.getId(), entity));
+    }
   }
 
   @Override
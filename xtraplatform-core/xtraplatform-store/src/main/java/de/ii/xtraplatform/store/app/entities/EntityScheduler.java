@@ -0,0 +1,214 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.app.entities;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.ii.xtraplatform.runtime.domain.LogContext;
+import de.ii.xtraplatform.store.app.EventDispatcher;
+import de.ii.xtraplatform.store.domain.Identifier;
+import de.ii.xtraplatform.store.domain.entities.EntityData;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Runs an entity lifecycle action, e.g. creation, for many entities. An entity waits for all
+ * entities of the types it depends on, see {@link EventDispatcher#ENTITY_TYPE_DEPENDENCIES}, other
+ * types keep the alphabetical order. Additionally it waits for {@link
+ * EntityData#getEntityDependencies()}. Independent entities are processed concurrently.
+ */
+class EntityScheduler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EntityScheduler.class);
+
+  private final int parallelism;
+  private final MetricRegistry metricRegistry;
+
+  EntityScheduler(int parallelism, MetricRegistry metricRegistry) {
+    this.parallelism = parallelism;
+    this.metricRegistry = metricRegistry;
+  }
+
+  CompletableFuture<Void> run(
+      String action,
+      List<Identifier> identifiers,
+      Function<Identifier, EntityData> data,
+      BiFunction<Identifier, EntityData, CompletableFuture<Void>> task) {
+    if (identifiers.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    Map<Identifier, EntityData> entities = new LinkedHashMap<>();
+    identifiers.stream()
+        .sorted()
+        .forEach(identifier -> entities.put(identifier, data.apply(identifier)));
+
+    Map<Identifier, Set<Identifier>> dependencies = getDependencies(entities, true);
+    List<Identifier> order = sort(dependencies);
+
+    if (order.size() < entities.size()) {
+      LOGGER.warn(
+          "Ignoring entity dependencies, found a cycle between {}",
+          entities.keySet().stream()
+              .filter(identifier -> !order.contains(identifier))
+              .map(Identifier::asPath)
+              .collect(Collectors.toList()));
+      dependencies = getDependencies(entities, false);
+      order.clear();
+      order.addAll(sort(dependencies));
+    }
+
+    ExecutorService executorService =
+        Executors.newFixedThreadPool(
+            Math.min(parallelism, entities.size()),
+            new ThreadFactoryBuilder().setNameFormat("entities." + action + "-%d").build());
+    Map<Identifier, CompletableFuture<Void>> done = new HashMap<>();
+
+    for (Identifier identifier : order) {
+      CompletableFuture<?>[] predecessors =
+          dependencies.get(identifier).stream()
+              .map(done::get)
+              .toArray(CompletableFuture[]::new);
+
+      done.put(
+          identifier,
+          CompletableFuture.allOf(predecessors)
+              .handle((ignore, throwable) -> null)
+              .thenRunAsync(
+                  LogContext.withMdc(
+                      () -> runTimed(action, identifier, entities.get(identifier), task)),
+                  executorService));
+    }
+
+    return CompletableFuture.allOf(done.values().toArray(new CompletableFuture[0]))
+        .whenComplete((ignore, throwable) -> executorService.shutdown());
+  }
+
+  private void runTimed(
+      String action,
+      Identifier identifier,
+      EntityData entityData,
+      BiFunction<Identifier, EntityData, CompletableFuture<Void>> task) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+
+    try {
+      task.apply(identifier, entityData).join();
+    } catch (Throwable e) {
+      LogContext.error(LOGGER, e, "Entity {} failed for '{}'", action, identifier.asPath());
+    } finally {
+      MDC.clear();
+    }
+
+    long duration = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    metricRegistry
+        .timer(MetricRegistry.name("entities", identifier.path().get(0), action))
+        .update(duration, TimeUnit.MILLISECONDS);
+
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("Entity {} for '{}' took {}ms", action, identifier.asPath(), duration);
+    }
+  }
+
+  static Map<Identifier, Set<Identifier>> getDependencies(
+      Map<Identifier, EntityData> entities, boolean withExplicit) {
+    Map<String, List<Identifier>> byType =
+        entities.keySet().stream()
+            .collect(
+                Collectors.groupingBy(
+                    identifier -> identifier.path().get(0),
+                    LinkedHashMap::new,
+                    Collectors.toList()));
+    Map<Identifier, Set<Identifier>> dependencies = new LinkedHashMap<>();
+
+    for (Map.Entry<Identifier, EntityData> entity : entities.entrySet()) {
+      Set<Identifier> entityDependencies = new LinkedHashSet<>();
+
+      String entityType = entity.getKey().path().get(0);
+      for (String dependency : getTypeDependencies(entityType, byType.keySet())) {
+        entityDependencies.addAll(byType.get(dependency));
+      }
+
+      if (withExplicit && Objects.nonNull(entity.getValue())) {
+        entity.getValue().getEntityDependencies().stream()
+            .filter(entities::containsKey)
+            .filter(dependency -> !Objects.equals(dependency, entity.getKey()))
+            .forEach(entityDependencies::add);
+      }
+
+      dependencies.put(entity.getKey(), entityDependencies);
+    }
+
+    return dependencies;
+  }
+
+  static List<String> getTypeDependencies(String entityType, Set<String> entityTypes) {
+    if (EventDispatcher.ENTITY_TYPE_DEPENDENCIES.containsKey(entityType)) {
+      return EventDispatcher.ENTITY_TYPE_DEPENDENCIES.get(entityType).stream()
+          .filter(entityTypes::contains)
+          .collect(Collectors.toList());
+    }
+
+    // types in the graph only depend on each other, so this cannot produce a cycle
+    return ImmutableList.copyOf(new TreeSet<>(entityTypes).headSet(entityType));
+  }
+
+  // topological order, entities in a cycle are missing
+  static List<Identifier> sort(Map<Identifier, Set<Identifier>> dependencies) {
+    Map<Identifier, Integer> pending = new HashMap<>();
+    Map<Identifier, List<Identifier>> dependents = new HashMap<>();
+    Deque<Identifier> ready = new ArrayDeque<>();
+    List<Identifier> order = new ArrayList<>();
+
+    dependencies.forEach(
+        (identifier, identifierDependencies) -> {
+          pending.put(identifier, identifierDependencies.size());
+          identifierDependencies.forEach(
+              dependency ->
+                  dependents
+                      .computeIfAbsent(dependency, ignore -> new ArrayList<>())
+                      .add(identifier));
+          if (identifierDependencies.isEmpty()) {
+            ready.add(identifier);
+          }
+        });
+
+    while (!ready.isEmpty()) {
+      Identifier identifier = ready.remove();
+      order.add(identifier);
+
+      for (Identifier dependent : dependents.getOrDefault(identifier, ImmutableList.of())) {
+        if (pending.merge(dependent, -1, Integer::sum) == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+
+    return order;
+  }
+}
@@ -9,6 +9,7 @@ package de.ii.xtraplatform.store.app.entities;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import de.ii.xtraplatform.store.app.EventSourcing;
 import de.ii.xtraplatform.store.app.ValueDecoderWithBuilder;
 import de.ii.xtraplatform.store.domain.Identifier;
@@ -61,6 +62,27 @@ public class ValueDecoderEntityDataMigration implements ValueDecoderMiddleware<E
     return entityData;
   }
 
+  // the payload is only needed for migrations
+  @Override
+  public EntityData process(
+      Identifier identifier,
+      TokenBuffer payload,
+      ObjectMapper objectMapper,
+      EntityData entityData,
+      boolean ignoreCache)
+      throws IOException {
+    if (entityData.getEntityStorageVersion() < entityData.getEntitySchemaVersion()) {
+      return process(
+          identifier,
+          objectMapper.writeValueAsBytes(payload),
+          objectMapper,
+          entityData,
+          ignoreCache);
+    }
+
+    return entityData;
+  }
+
   @Override
   public boolean canRecover() {
     return true;
@@ -8,6 +8,7 @@
 package de.ii.xtraplatform.store.app.entities;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import de.ii.xtraplatform.store.app.EventSourcing;
 import de.ii.xtraplatform.store.domain.Identifier;
 import de.ii.xtraplatform.store.domain.ValueDecoderMiddleware;
@@ -36,25 +37,55 @@ public class ValueDecoderEntitySubtype implements ValueDecoderMiddleware<EntityD
       EntityData data,
       boolean ignoreCache)
       throws IOException {
-    if (data.getEntitySubType().isPresent()) {
-      EntityDataBuilder<EntityData> builder =
-          newBuilderSupplier.apply(identifier, data.getEntitySubType().get());
+    EntityDataBuilder<EntityData> builder = getBuilder(identifier, data, ignoreCache);
 
-      // TODO: happens because providers declare subtypes despite not having any
-      // no builder found for subtype
-      if (builder == null) {
-        return data;
-      }
+    if (builder == null) {
+      return data;
+    }
+
+    objectMapper.readerForUpdating(builder).readValue(payload);
+
+    return builder.build();
+  }
+
+  @Override
+  public EntityData process(
+      Identifier identifier,
+      TokenBuffer payload,
+      ObjectMapper objectMapper,
+      EntityData data,
+      boolean ignoreCache)
+      throws IOException {
+    EntityDataBuilder<EntityData> builder = getBuilder(identifier, data, ignoreCache);
+
+    if (builder == null) {
+      return data;
+    }
+
+    objectMapper.readerForUpdating(builder).readValue(payload.asParser());
 
-      if (eventSourcing.isInCache(identifier) && !ignoreCache) {
-        builder.from(eventSourcing.getFromCache(identifier));
-      }
+    return builder.build();
+  }
+
+  private EntityDataBuilder<EntityData> getBuilder(
+      Identifier identifier, EntityData data, boolean ignoreCache) {
+    if (!data.getEntitySubType().isPresent()) {
+      return null;
+    }
 
-      objectMapper.readerForUpdating(builder).readValue(payload);
+    EntityDataBuilder<EntityData> builder =
+        newBuilderSupplier.apply(identifier, data.getEntitySubType().get());
+
+    // TODO: happens because providers declare subtypes despite not having any
+    // no builder found for subtype
+    if (builder == null) {
+      return null;
+    }
 
-      return builder.build();
+    if (eventSourcing.isInCache(identifier) && !ignoreCache) {
+      builder.from(eventSourcing.getFromCache(identifier));
     }
 
-    return data;
+    return builder;
   }
 }
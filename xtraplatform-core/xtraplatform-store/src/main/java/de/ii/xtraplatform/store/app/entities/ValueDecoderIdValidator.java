@@ -8,6 +8,7 @@
 package de.ii.xtraplatform.store.app.entities;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import de.ii.xtraplatform.store.domain.Identifier;
 import de.ii.xtraplatform.store.domain.ValueDecoderMiddleware;
 import de.ii.xtraplatform.store.domain.entities.EntityData;
@@ -28,7 +29,21 @@ public class ValueDecoderIdValidator implements ValueDecoderMiddleware<EntityDat
       EntityData data,
       boolean ignoreCache)
       throws IOException {
+    return validate(identifier, data);
+  }
+
+  @Override
+  public EntityData process(
+      Identifier identifier,
+      TokenBuffer payload,
+      ObjectMapper objectMapper,
+      EntityData data,
+      boolean ignoreCache)
+      throws IOException {
+    return validate(identifier, data);
+  }
 
+  private EntityData validate(Identifier identifier, EntityData data) {
     if (!Objects.equals(identifier.id(), data.getId())) {
       LOGGER.error(
           "Id mismatch: ignored entity '{}' because 'id' is set to '{}'",
@@ -9,6 +9,7 @@ package de.ii.xtraplatform.store.app.entities.handler;
 
 import com.google.common.base.Strings;
 import de.ii.xtraplatform.store.domain.entities.EntityData;
+import de.ii.xtraplatform.store.domain.entities.EntityLifecyclePool;
 import de.ii.xtraplatform.store.domain.entities.PersistentEntity;
 import de.ii.xtraplatform.store.domain.entities.handler.Entity;
 import java.lang.reflect.Field;
@@ -140,6 +141,14 @@ public class EntityHandler extends LifecycleCallbackHandler implements Configura
     data.addAttribute(new Attribute("method", "setData"));
     data.addAttribute(new Attribute("type", EntityData.class.getName()));
 
+    // add @Property(name = Entity.LIFECYCLE_POOL_KEY) for method setLifecyclePool in class
+    // AbstractPersistentEntity
+    Element lifecyclePool = new Element("property", null);
+    properties.addElement(lifecyclePool);
+    lifecyclePool.addAttribute(new Attribute("name", Entity.LIFECYCLE_POOL_KEY));
+    lifecyclePool.addAttribute(new Attribute("method", "setLifecyclePool"));
+    lifecyclePool.addAttribute(new Attribute("type", EntityLifecyclePool.class.getName()));
+
     // add type, subType, dataClass and dataSubClass to type description
     typeDesc.addProperty(
         new PropertyDescription(Entity.TYPE_KEY, String.class.getName(), type.get(), true));
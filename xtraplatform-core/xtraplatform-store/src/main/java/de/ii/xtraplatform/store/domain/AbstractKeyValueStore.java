@@ -84,15 +84,38 @@ public abstract class AbstractKeyValueStore<T> implements KeyValueStore<T> {
 
     return getEventSourcing()
         .pushMutationEvent(identifier, value)
-        .whenComplete(
-            (entityData, throwable) -> {
-              if (Objects.nonNull(throwable)) {
-                onFailure(identifier, throwable);
-              } else if (Objects.nonNull(entityData)) {
-                if (exists) onUpdate(identifier, entityData);
-                else onCreate(identifier, entityData).join();
-              }
-            });
+        .whenComplete((entityData, throwable) -> onPut(identifier, exists, entityData, throwable));
+  }
+
+  // all values are written to the store in one batch
+  @Override
+  public CompletableFuture<Void> putAll(Map<Identifier, T> values) {
+    Map<Identifier, Boolean> exists =
+        values.keySet().stream().collect(Collectors.toMap(identifier -> identifier, this::has));
+
+    return CompletableFuture.allOf(
+        getEventSourcing().pushMutationEvents(values).entrySet().stream()
+            .map(
+                pushed ->
+                    pushed
+                        .getValue()
+                        .whenComplete(
+                            (entityData, throwable) ->
+                                onPut(
+                                    pushed.getKey(),
+                                    exists.get(pushed.getKey()),
+                                    entityData,
+                                    throwable)))
+            .toArray(CompletableFuture[]::new));
+  }
+
+  private void onPut(Identifier identifier, boolean exists, T entityData, Throwable throwable) {
+    if (Objects.nonNull(throwable)) {
+      onFailure(identifier, throwable);
+    } else if (Objects.nonNull(entityData)) {
+      if (exists) onUpdate(identifier, entityData);
+      else onCreate(identifier, entityData).join();
+    }
   }
 
   protected CompletableFuture<T> putWithoutTrigger(Identifier identifier, T value) {
@@ -7,13 +7,40 @@
  */
 package de.ii.xtraplatform.store.domain;
 
+import de.ii.xtraplatform.runtime.domain.StoreConfiguration.DecodingMode;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
 public interface EventStore {
 
   void subscribe(EventStoreSubscriber subscriber);
 
   void push(EntityEvent event);
 
+  /** Writes all events before any of them is emitted, see {@link EventStoreDriver#saveEvents}. */
+  default void pushAll(List<EntityEvent> events) {
+    events.forEach(this::push);
+  }
+
   boolean isReadOnly();
 
   void replay(EventFilter filter);
+
+  default Optional<Path> getSnapshotDirectory() {
+    return Optional.empty();
+  }
+
+  default long getSnapshotGeneration() {
+    return 0;
+  }
+
+  // identifies the installed bundle versions, snapshots written by others are stale
+  default String getSnapshotBundles() {
+    return "";
+  }
+
+  default DecodingMode getDecodingMode() {
+    return DecodingMode.EAGER;
+  }
 }
@@ -10,6 +10,7 @@ package de.ii.xtraplatform.store.domain;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
@@ -19,10 +20,37 @@ public interface EventStoreDriver {
 
   Stream<EntityEvent> loadEventStream();
 
+  default Stream<EntityEvent> loadEventStream(EventFilter filter) {
+    return loadEventStream().filter(filter::matches);
+  }
+
   void saveEvent(EntityEvent event) throws IOException;
 
   void deleteAllEvents(String type, Identifier identifier, String format) throws IOException;
 
+  /**
+   * Saves or deletes the events in the given order. The batch is not atomic. Drivers should stage
+   * all writes first, so that a failure while staging leaves the store unchanged. A failure after
+   * some events were applied is reported with a {@link PartialSaveException}.
+   */
+  default void saveEvents(List<EntityEvent> events) throws IOException {
+    for (int i = 0; i < events.size(); i++) {
+      EntityEvent event = events.get(i);
+      try {
+        if (Objects.equals(event.deleted(), true)) {
+          deleteAllEvents(event.type(), event.identifier(), event.format());
+        } else {
+          saveEvent(event);
+        }
+      } catch (IOException e) {
+        if (i > 0) {
+          throw new PartialSaveException(i, e);
+        }
+        throw e;
+      }
+    }
+  }
+
   default boolean supportsWatch() {
     return false;
   }
@@ -10,10 +10,13 @@ package de.ii.xtraplatform.store.domain;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.common.base.Joiner;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import java.util.List;
+import java.util.Objects;
 import org.immutables.value.Value;
 
-@Value.Immutable
+@Value.Immutable(prehash = true)
 @Value.Style(get = "*")
 @JsonDeserialize(as = ImmutableIdentifier.class)
 public interface Identifier extends Comparable<Identifier> {
@@ -22,16 +25,28 @@ public interface Identifier extends Comparable<Identifier> {
 
   List<String> path();
 
+  // canonical instances, equal identifiers that were interned are also identical
+  Interner<Identifier> INTERNER = Interners.newWeakInterner();
+
   static Identifier from(String id, String... path) {
 
-    return ImmutableIdentifier.builder().id(id).addPath(path).build();
+    return intern(ImmutableIdentifier.builder().id(id).addPath(path).build());
+  }
+
+  static Identifier intern(Identifier identifier) {
+    return INTERNER.intern(identifier);
   }
 
   @Override
   default int compareTo(Identifier identifier) {
+    if (this == identifier) {
+      return 0;
+    }
 
     for (int i = 0; i < path().size() && i < identifier.path().size(); i++) {
-      int compared = path().get(i).compareTo(identifier.path().get(i));
+      String segment = path().get(i);
+      String otherSegment = identifier.path().get(i);
+      int compared = segment == otherSegment ? 0 : segment.compareTo(otherSegment);
       if (compared != 0) {
         return compared;
       }
@@ -46,6 +61,20 @@ public interface Identifier extends Comparable<Identifier> {
     return id().compareTo(identifier.id());
   }
 
+  default boolean startsWith(List<String> prefix) {
+    if (prefix.size() > path().size()) {
+      return false;
+    }
+
+    for (int i = prefix.size() - 1; i >= 0; i--) {
+      if (!Objects.equals(prefix.get(i), path().get(i))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
   Joiner JOINER = Joiner.on('/').skipNulls();
 
   @JsonIgnore
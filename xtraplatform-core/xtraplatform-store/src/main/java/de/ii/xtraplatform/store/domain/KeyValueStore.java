@@ -8,6 +8,7 @@
 package de.ii.xtraplatform.store.domain;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 // no de/serialization, no merging, just crd with ids/paths, basically what we have in kvstore-api
@@ -31,4 +32,11 @@ public interface KeyValueStore<T> {
   T get(Identifier identifier);
 
   CompletableFuture<T> put(Identifier identifier, T value);
+
+  default CompletableFuture<Void> putAll(Map<Identifier, T> values) {
+    return CompletableFuture.allOf(
+        values.entrySet().stream()
+            .map(entry -> put(entry.getKey(), entry.getValue()))
+            .toArray(CompletableFuture[]::new));
+  }
 }
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.domain;
+
+import java.io.IOException;
+
+/** Thrown by {@link EventStoreDriver#saveEvents} if only the first events of a batch were saved. */
+public class PartialSaveException extends IOException {
+
+  private final int saved;
+
+  public PartialSaveException(int saved, IOException cause) {
+    super(cause.getMessage(), cause);
+    this.saved = saved;
+  }
+
+  /** The number of events at the start of the batch that were saved or deleted. */
+  public int getSaved() {
+    return saved;
+  }
+}
@@ -17,4 +17,20 @@ import org.immutables.value.Value;
 public interface ReplayEvent extends EntityEvent {
   @Nullable
   String additionalLocation();
+
+  // file the event was read from and its last modified time and size
+  @Nullable
+  String source();
+
+  @Nullable
+  String sourceVersion();
+
+  // set if the source is unchanged since the replay snapshot with this generation
+  @Nullable
+  Long snapshotGeneration();
+
+  // set if the value depends on environment variables, it is never restored from or written to a
+  // replay snapshot
+  @Nullable
+  Boolean environmentDependent();
 }
@@ -8,6 +8,7 @@
 package de.ii.xtraplatform.store.domain;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import java.io.IOException;
 
 public interface ValueDecoderMiddleware<T> {
@@ -16,6 +17,18 @@ public interface ValueDecoderMiddleware<T> {
       Identifier identifier, byte[] payload, ObjectMapper objectMapper, T data, boolean ignoreCache)
       throws IOException;
 
+  // in-memory conversion, middlewares that read the payload should override this to avoid bytes
+  default T process(
+      Identifier identifier,
+      TokenBuffer payload,
+      ObjectMapper objectMapper,
+      T data,
+      boolean ignoreCache)
+      throws IOException {
+    return process(
+        identifier, objectMapper.writeValueAsBytes(payload), objectMapper, data, ignoreCache);
+  }
+
   default T recover(Identifier identifier, byte[] payload, ObjectMapper objectMapper)
       throws IOException {
     throw new IllegalStateException();
@@ -23,8 +23,13 @@ public interface ValueEncoding<T> {
     JSON,
     YML,
     YAML,
+    SMILE,
     UNKNOWN /*, ION*/;
 
+    public boolean isBinary() {
+      return this == SMILE;
+    }
+
     public static FORMAT fromString(String format) {
       if (Objects.isNull(format)) {
         return NONE;
@@ -42,8 +47,11 @@ public interface ValueEncoding<T> {
 
   FORMAT getDefaultFormat();
 
+  // binary formats are only used internally and never read from the store
   default boolean isSupported(String format) {
-    return FORMAT.fromString(format) != FORMAT.UNKNOWN;
+    FORMAT f = FORMAT.fromString(format);
+
+    return f != FORMAT.UNKNOWN && !f.isBinary();
   }
 
   byte[] serialize(T data);
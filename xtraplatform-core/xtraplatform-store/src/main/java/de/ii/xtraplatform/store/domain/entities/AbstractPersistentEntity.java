@@ -7,18 +7,16 @@
  */
 package de.ii.xtraplatform.store.domain.entities;
 
-import com.google.common.util.concurrent.MoreExecutors;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.base.Stopwatch;
 import de.ii.xtraplatform.runtime.domain.LogContext;
 import de.ii.xtraplatform.store.domain.entities.handler.Entity;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.PostRegistration;
@@ -37,7 +35,7 @@ public abstract class AbstractPersistentEntity<T extends EntityData>
 
   private static final Logger LOGGER = LoggerFactory.getLogger(AbstractPersistentEntity.class);
 
-  private final ExecutorService executorService;
+  private volatile EntityLifecycleExecutor executorService;
   private final List<Consumer<PersistentEntity>> reloadListeners;
   private final List<Consumer<EntityState>> stateChangeListeners;
 
@@ -49,16 +47,12 @@ public abstract class AbstractPersistentEntity<T extends EntityData>
   @ServiceController(value = false) // is ignored here, but added by @Entity handler
   public volatile boolean register;
 
-  private T data;
+  private volatile T data;
   private Future<?> startup;
   private EntityState.STATE state;
 
   public AbstractPersistentEntity() {
-    this.executorService =
-        MoreExecutors.getExitingExecutorService(
-            (ThreadPoolExecutor)
-                Executors.newFixedThreadPool(
-                    1, new ThreadFactoryBuilder().setNameFormat("entity.lifecycle-%d").build()));
+    this.executorService = null;
     this.reloadListeners = new CopyOnWriteArrayList<>();
     this.stateChangeListeners = new CopyOnWriteArrayList<>();
     this.data = null;
@@ -88,6 +82,13 @@ public abstract class AbstractPersistentEntity<T extends EntityData>
     }
   }
 
+  @Property(name = Entity.LIFECYCLE_POOL_KEY) // is ignored here, but added by @Entity handler
+  public final void setLifecyclePool(EntityLifecyclePool lifecyclePool) {
+    if (Objects.isNull(executorService)) {
+      this.executorService = new EntityLifecycleExecutor(lifecyclePool);
+    }
+  }
+
   @Validate // is ignored here, but added by @EntityComponent stereotype
   public final void onValidate() {
     try (MDC.MDCCloseable closeable =
@@ -169,6 +170,55 @@ public abstract class AbstractPersistentEntity<T extends EntityData>
     }
   }
 
+  /**
+   * Applies new data without a restart if {@link #onPartialReload} accepts the changes, otherwise
+   * the caller has to reconfigure the entity. Runs after pending startups and reloads.
+   */
+  public final boolean reloadPartially(T data, EntityDataChanges changes) {
+    if (state != STATE.ACTIVE || Objects.isNull(this.data)) {
+      return false;
+    }
+
+    try {
+      return executorService.submit(() -> applyPartially(data, changes)).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      return false;
+    }
+  }
+
+  private boolean applyPartially(T data, EntityDataChanges changes) {
+    if (state != STATE.ACTIVE || Objects.isNull(this.data)) {
+      return false;
+    }
+
+    try (MDC.MDCCloseable closeable =
+        LogContext.putCloseable(LogContext.CONTEXT.SERVICE, getId())) {
+      boolean applied;
+      try {
+        applied = onPartialReload(data, changes);
+      } catch (Throwable e) {
+        LogContext.error(LOGGER, e, "Could not apply configuration changes");
+        applied = false;
+      }
+
+      if (!applied) {
+        return false;
+      }
+
+      this.data = data;
+
+      if (LOGGER.isTraceEnabled()) {
+        LOGGER.trace("RELOADED PARTIALLY {} {} {}", getType(), getId(), changes.getPaths());
+      }
+      reloadListeners.forEach(listener -> listener.accept(this));
+
+      return true;
+    }
+  }
+
   private void afterReload() {
     reloadListeners.forEach(listener -> listener.accept(this));
 
@@ -189,11 +239,13 @@ public abstract class AbstractPersistentEntity<T extends EntityData>
 
   private void triggerStartup(boolean wait, Runnable then) {
     this.startup =
-        executorService.submit(
+        executorService.submitStartup(
             () -> {
               LogContext.put(LogContext.CONTEXT.SERVICE, getId());
+              Stopwatch stopwatch = Stopwatch.createStarted();
               try {
                 this.register = onStartup();
+                recordStartup(stopwatch.elapsed(TimeUnit.MILLISECONDS));
               } catch (InterruptedException e) {
                 if (LOGGER.isTraceEnabled()) {
                   LOGGER.trace(
@@ -215,7 +267,7 @@ public abstract class AbstractPersistentEntity<T extends EntityData>
     if (wait) {
       try {
         this.startup.get();
-      } catch (InterruptedException | ExecutionException e) {
+      } catch (InterruptedException | ExecutionException | CancellationException e) {
         if (LOGGER.isTraceEnabled()) {
           LOGGER.trace(
               "INTERRUPTED {} {} {} {}", getType(), getId(), shouldRegister(), register, e);
@@ -224,6 +276,14 @@ public abstract class AbstractPersistentEntity<T extends EntityData>
     }
   }
 
+  private void recordStartup(long millis) {
+    executorService.getPool().recordStartup(getType(), millis);
+
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("Startup of {} '{}' took {}ms", getType(), getId(), millis);
+    }
+  }
+
   private void cancelStartup() {
     if (Objects.nonNull(startup)) {
       boolean canceled = startup.cancel(true);
@@ -244,6 +304,15 @@ public abstract class AbstractPersistentEntity<T extends EntityData>
 
   protected void onStartupFailure(Throwable throwable) {}
 
+  /**
+   * Called with the new data while {@link #getData} still returns the previous data, which is only
+   * replaced if the changes were applied. Return true if the changes were applied, e.g. only labels
+   * changed, false to restart with {@link #onStartup}.
+   */
+  protected boolean onPartialReload(T data, EntityDataChanges changes) {
+    return false;
+  }
+
   protected boolean shouldRegister() {
     return true;
   }
@@ -8,7 +8,10 @@
 package de.ii.xtraplatform.store.domain.entities;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.collect.ImmutableList;
+import de.ii.xtraplatform.store.domain.Identifier;
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import org.immutables.value.Value;
 
@@ -40,4 +43,10 @@ public interface EntityData extends de.ii.xtraplatform.store.domain.Value {
 
   @JsonIgnore
   Optional<String> getEntitySubType();
+
+  /** Other entities that have to be created before this one, e.g. a provider used by a service. */
+  @JsonIgnore
+  default List<Identifier> getEntityDependencies() {
+    return ImmutableList.of();
+  }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.domain.entities;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import org.immutables.value.Value;
+
+/**
+ * The key paths that differ between the previous and the new data of an entity, segments are
+ * joined with dots, e.g. {@code collections.foo.label}. Arrays are compared as a whole.
+ */
+@Value.Immutable
+public interface EntityDataChanges {
+
+  // bookkeeping that never requires a restart
+  Set<String> METADATA = ImmutableSet.of("lastModified", "createdAt");
+
+  static EntityDataChanges of(List<String> paths) {
+    return ImmutableEntityDataChanges.builder().paths(paths).build();
+  }
+
+  List<String> getPaths();
+
+  @Value.Derived
+  default boolean isEmpty() {
+    return getPaths().isEmpty();
+  }
+
+  /** True if the given path, one of its parents or one of its children changed. */
+  default boolean affects(String path) {
+    return getPaths().stream()
+        .anyMatch(
+            changed ->
+                changed.equals(path)
+                    || changed.startsWith(path + ".")
+                    || path.startsWith(changed + "."));
+  }
+
+  /** True if all changes, except metadata, are inside of the given paths. */
+  default boolean onlyAffects(String... paths) {
+    return getPaths().stream()
+        .allMatch(
+            changed ->
+                METADATA.contains(changed)
+                    || Arrays.stream(paths)
+                        .anyMatch(path -> changed.equals(path) || changed.startsWith(path + ".")));
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.domain.entities;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the lifecycle tasks of an entity one after another on the threads of an {@link
+ * EntityLifecyclePool}, so there is no dedicated thread per entity.
+ */
+class EntityLifecycleExecutor {
+
+  private final EntityLifecyclePool pool;
+  private final Queue<Task> tasks;
+  private boolean isRunning;
+
+  EntityLifecycleExecutor(EntityLifecyclePool pool) {
+    this.pool = pool;
+    this.tasks = new ArrayDeque<>();
+    this.isRunning = false;
+  }
+
+  EntityLifecyclePool getPool() {
+    return pool;
+  }
+
+  // cancel(true) on the returned future interrupts the task if it is already running
+  Future<?> submit(Runnable runnable) {
+    return submit(Executors.callable(runnable), false);
+  }
+
+  <U> Future<U> submit(Callable<U> callable) {
+    return submit(callable, false);
+  }
+
+  // runs on a startup thread instead of the shared pool
+  Future<?> submitStartup(Runnable runnable) {
+    return submit(Executors.callable(runnable), true);
+  }
+
+  private synchronized <U> Future<U> submit(Callable<U> callable, boolean isStartup) {
+    FutureTask<U> future = new FutureTask<>(callable);
+    tasks.add(new Task(future, isStartup));
+
+    if (!isRunning) {
+      this.isRunning = true;
+      execute(pool.getExecutor(), this::drain);
+    }
+
+    return future;
+  }
+
+  private void drain() {
+    while (true) {
+      Task task;
+      synchronized (this) {
+        task = tasks.peek();
+        if (Objects.isNull(task)) {
+          this.isRunning = false;
+          return;
+        }
+        if (!task.isStartup) {
+          tasks.remove();
+        }
+      }
+
+      // the startup thread takes the task from the queue and continues draining afterwards
+      if (task.isStartup) {
+        execute(pool.getStartupExecutor(), this::drainStartup);
+        return;
+      }
+
+      run(task.future);
+    }
+  }
+
+  private void drainStartup() {
+    Task task;
+    synchronized (this) {
+      task = tasks.poll();
+    }
+    if (Objects.nonNull(task)) {
+      run(task.future);
+    }
+
+    execute(pool.getExecutor(), this::drain);
+  }
+
+  private void execute(Executor executor, Runnable drain) {
+    try {
+      executor.execute(drain);
+    } catch (RejectedExecutionException e) {
+      // the pool was shut down with the store
+      synchronized (this) {
+        tasks.forEach(task -> task.future.cancel(false));
+        tasks.clear();
+        this.isRunning = false;
+      }
+    }
+  }
+
+  private static void run(FutureTask<?> future) {
+    future.run();
+
+    // a canceled task must not interrupt the next one
+    Thread.interrupted();
+  }
+
+  private static class Task {
+    private final FutureTask<?> future;
+    private final boolean isStartup;
+
+    private Task(FutureTask<?> future, boolean isStartup) {
+      this.future = future;
+      this.isStartup = isStartup;
+    }
+  }
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright 2021 interactive instruments GmbH
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package de.ii.xtraplatform.store.domain.entities;
+
+import java.util.concurrent.Executor;
+
+/** Threads for the lifecycle tasks of all entities, owned by the store. */
+public interface EntityLifecyclePool {
+
+  // bounded, shared by all entities
+  Executor getExecutor();
+
+  // startups may block for a long time, e.g. on a database, so they get their own bounded pool
+  Executor getStartupExecutor();
+
+  void recordStartup(String entityType, long millis);
+}
@@ -26,4 +26,5 @@ public @interface Entity {
   String DATA_CLASS_KEY = "dataClass";
   String DATA_SUB_CLASS_KEY = "dataSubClass";
   String DATA_KEY = "data";
+  String LIFECYCLE_POOL_KEY = "lifecyclePool";
 }
@@ -13,17 +13,28 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sun.nio.file.SensitivityWatchEventModifier;
+import de.ii.xtraplatform.dropwizard.domain.Dropwizard;
 import de.ii.xtraplatform.dropwizard.domain.XtraPlatform;
 import de.ii.xtraplatform.runtime.domain.Constants;
 import de.ii.xtraplatform.runtime.domain.LogContext;
 import de.ii.xtraplatform.runtime.domain.StoreConfiguration;
+import de.ii.xtraplatform.runtime.domain.StoreConfiguration.FsyncPolicy;
 import de.ii.xtraplatform.store.app.EventPaths;
 import de.ii.xtraplatform.store.domain.EntityEvent;
+import de.ii.xtraplatform.store.domain.EventFilter;
 import de.ii.xtraplatform.store.domain.EventStoreDriver;
 import de.ii.xtraplatform.store.domain.Identifier;
+import de.ii.xtraplatform.store.domain.PartialSaveException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -31,6 +42,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
@@ -38,9 +50,17 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -62,6 +82,7 @@ public class EventStoreDriverFs implements EventStoreDriver {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(EventStoreDriverFs.class);
   private static final String STORE_DIR_LEGACY = "config-store";
+  private static final int MAX_DEBOUNCE_FACTOR = 10;
 
   @ServiceController(value = false)
   private boolean publish;
@@ -72,8 +93,18 @@ public class EventStoreDriverFs implements EventStoreDriver {
   private final List<EventPaths> additionalEventPaths;
   private final boolean isEnabled;
   private final boolean isReadOnly;
-
-  EventStoreDriverFs(@Context BundleContext bundleContext, @Requires XtraPlatform xtraPlatform) {
+  private final boolean parallelReplay;
+  private final int replayThreads;
+  private final int watchDebounce;
+  private final FsyncPolicy fsync;
+  private final Timer writeTimer;
+  private final Timer fsyncTimer;
+  private final Meter bytesWritten;
+
+  EventStoreDriverFs(
+      @Context BundleContext bundleContext,
+      @Requires XtraPlatform xtraPlatform,
+      @Requires Dropwizard dropwizard) {
     this.storeDirectory =
         getStoreDirectory(
             bundleContext.getProperty(Constants.DATA_DIR_KEY),
@@ -87,6 +118,16 @@ public class EventStoreDriverFs implements EventStoreDriver {
     this.isEnabled = true; // TODO: xtraPlatform.getConfiguration().store.driver = StoreDriver.FS
     this.isReadOnly =
         xtraPlatform.getConfiguration().store.mode == StoreConfiguration.StoreMode.READ_ONLY;
+    this.parallelReplay = xtraPlatform.getConfiguration().store.parallelReplay;
+    this.replayThreads = xtraPlatform.getConfiguration().store.replayThreads;
+    this.watchDebounce = xtraPlatform.getConfiguration().store.watchDebounce;
+    this.fsync = xtraPlatform.getConfiguration().store.fsync;
+
+    MetricRegistry metricRegistry = dropwizard.getEnvironment().metrics();
+    this.writeTimer = metricRegistry.timer(MetricRegistry.name(EventStoreDriverFs.class, "write"));
+    this.fsyncTimer = metricRegistry.timer(MetricRegistry.name(EventStoreDriverFs.class, "fsync"));
+    this.bytesWritten =
+        metricRegistry.meter(MetricRegistry.name(EventStoreDriverFs.class, "bytes-written"));
 
     this.additionalDirectories =
         getAdditionalDirectories(
@@ -160,33 +201,26 @@ public class EventStoreDriverFs implements EventStoreDriver {
 
   @Override
   public Stream<EntityEvent> loadEventStream() {
+    if (parallelReplay) {
+      return loadEventStreamParallel();
+    }
+
+    // every location is walked once, each file is matched against all patterns in one pass
     try {
       return Stream.concat(
-          eventPaths
-              .getPathPatternStream()
-              .flatMap(
-                  pathPattern ->
-                      loadPathStream(storeDirectory)
-                          .map(
-                              path ->
-                                  eventPaths.pathToEvent(
-                                      pathPattern, path, this::readPayload, false))
-                          .filter(Objects::nonNull))
+          loadPathStream(storeDirectory)
+              .flatMap(path -> eventPaths.pathToEvents(path, this::readPayload, false).stream())
               .sorted(Comparator.naturalOrder()),
           additionalEventPaths.stream()
               .filter(additionalEventPath -> Files.exists(additionalEventPath.getRootPath()))
               .flatMap(
                   additionalEventPath ->
-                      additionalEventPath
-                          .getPathPatternStream()
+                      loadPathStream(additionalEventPath.getRootPath())
                           .flatMap(
-                              pathPattern ->
-                                  loadPathStream(additionalEventPath.getRootPath())
-                                      .map(
-                                          path ->
-                                              additionalEventPath.pathToEvent(
-                                                  pathPattern, path, this::readPayload, true))
-                                      .filter(Objects::nonNull))
+                              path ->
+                                  additionalEventPath
+                                      .pathToEvents(path, this::readPayload, true)
+                                      .stream())
                           .sorted(Comparator.naturalOrder())));
 
     } catch (Throwable e) {
@@ -196,12 +230,123 @@ public class EventStoreDriverFs implements EventStoreDriver {
     return Stream.empty();
   }
 
+  // walks every location only once, matches and reads files concurrently, then sorts per location
+  private Stream<EntityEvent> loadEventStreamParallel() {
+    ExecutorService executorService =
+        Executors.newFixedThreadPool(
+            replayThreads, new ThreadFactoryBuilder().setNameFormat("store.replay-%d").build());
+
+    try {
+      List<EntityEvent> events = new ArrayList<>(loadEvents(eventPaths, false, executorService));
+
+      for (EventPaths additionalEventPath : additionalEventPaths) {
+        if (Files.exists(additionalEventPath.getRootPath())) {
+          events.addAll(loadEvents(additionalEventPath, true, executorService));
+        }
+      }
+
+      return events.stream();
+    } catch (RuntimeException e) {
+      // scanning failed, errors for single files are handled in loadEvents
+      LogContext.error(
+          LOGGER,
+          e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e,
+          "Reading events from '{}' failed",
+          storeDirectory);
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    return Stream.empty();
+  }
+
+  // a file that cannot be read is skipped, all other events are still replayed
+  private List<EntityEvent> readEvents(EventPaths paths, Path file, boolean isAdditional) {
+    try {
+      return paths.pathToEvents(file, this::readPayload, isAdditional);
+    } catch (RuntimeException e) {
+      LogContext.error(LOGGER, e, "Reading events from '{}' failed", file);
+      return ImmutableList.of();
+    }
+  }
+
+  private List<EntityEvent> loadEvents(
+      EventPaths paths, boolean isAdditional, ExecutorService executorService) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+
+    List<Path> files;
+    try (Stream<Path> pathStream = loadPathStream(paths.getRootPath())) {
+      files = pathStream.collect(Collectors.toList());
+    }
+    long scanned = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    List<CompletableFuture<List<EntityEvent>>> reads =
+        files.stream()
+            .map(
+                file ->
+                    CompletableFuture.supplyAsync(
+                        () -> readEvents(paths, file, isAdditional), executorService))
+            .collect(Collectors.toList());
+
+    List<EntityEvent> events =
+        reads.stream()
+            .map(CompletableFuture::join)
+            .flatMap(List::stream)
+            .collect(Collectors.toList());
+    long read = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    events.sort(Comparator.naturalOrder());
+    long sorted = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(
+          "Replay of '{}': scanned {} files in {}ms, read {} events in {}ms, sorted in {}ms",
+          paths.getRootPath(),
+          files.size(),
+          scanned,
+          events.size(),
+          read - scanned,
+          sorted - read);
+    }
+
+    return events;
+  }
+
+  // only walks the directories that may contain events for the entity types of the filter
+  @Override
+  public Stream<EntityEvent> loadEventStream(EventFilter filter) {
+    if (filter.getEntityTypes().contains("*")) {
+      return loadEventStream().filter(filter::matches);
+    }
+
+    try {
+      return Stream.concat(
+          loadEvents(eventPaths, false, filter),
+          additionalEventPaths.stream()
+              .filter(additionalEventPath -> Files.exists(additionalEventPath.getRootPath()))
+              .flatMap(additionalEventPath -> loadEvents(additionalEventPath, true, filter)));
+
+    } catch (Throwable e) {
+      LogContext.error(LOGGER, e, "Reading events from '{}' failed", storeDirectory);
+    }
+
+    return Stream.empty();
+  }
+
+  private Stream<EntityEvent> loadEvents(
+      EventPaths paths, boolean isAdditional, EventFilter filter) {
+    return loadPathStream(paths.getRootPath(), filter.getEntityTypes())
+        .flatMap(file -> paths.pathToEvents(file, this::readPayload, isAdditional).stream())
+        .filter(filter::matches)
+        .sorted(Comparator.naturalOrder());
+  }
+
   @Override
   public boolean supportsWatch() {
     return true;
   }
 
-  // TODO: stopWatching, move watchService to class, watch new directories, file extension filter
+  // TODO: stopWatching, move watchService to class, file extension filter
   @Override
   public void startWatching(Consumer<List<Path>> watchEventConsumer) {
 
@@ -217,46 +362,92 @@ public class EventStoreDriverFs implements EventStoreDriver {
 
       WatchKey key;
       while ((key = watchService.take()) != null) {
-        if (!keys.containsKey(key)) {
-          if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("WatchKey " + key + " not recognized!");
+        Set<Path> changedFiles = new LinkedHashSet<>(pollChanges(watchService, keys, key));
+
+        // coalesce bulk changes until the store is quiet, but continuous writes may not hold back
+        // the reload for longer than the maximum window
+        if (watchDebounce > 0) {
+          long deadline = System.currentTimeMillis() + MAX_DEBOUNCE_FACTOR * watchDebounce;
+          long remaining = deadline - System.currentTimeMillis();
+          while (remaining > 0) {
+            key = watchService.poll(Math.min(watchDebounce, remaining), TimeUnit.MILLISECONDS);
+            if (Objects.isNull(key)) {
+              break;
+            }
+            changedFiles.addAll(pollChanges(watchService, keys, key));
+            remaining = deadline - System.currentTimeMillis();
           }
-          continue;
         }
-        final Path rootDir = keys.get(key).get(0);
-        final Path watchDir = keys.get(key).get(1);
-        List<Path> changedFiles =
-            key.pollEvents().stream()
-                .filter(watchEvent -> watchEvent.context() instanceof Path)
-                .filter(
-                    watchEvent -> {
-                      String fileExtension = getFileExtension(watchEvent.context().toString());
-                      // TODO: either inject from store or filter at a later stage
-                      return Objects.equals(fileExtension, "yml")
-                          || Objects.equals(fileExtension, "yaml")
-                          || Objects.equals(fileExtension, "json");
-                    })
-                .map(
-                    watchEvent -> rootDir.relativize(watchDir.resolve((Path) watchEvent.context())))
-                .collect(Collectors.toList());
 
         if (!changedFiles.isEmpty()) {
-          watchEventConsumer.accept(changedFiles);
+          watchEventConsumer.accept(new ArrayList<>(changedFiles));
         }
-
-        key.reset();
       }
     } catch (IOException | InterruptedException e) {
       LogContext.error(LOGGER, e, "Could not watch directory {}", storeDirectory);
     }
   }
 
+  private List<Path> pollChanges(
+      WatchService watchService, Map<WatchKey, List<Path>> keys, WatchKey key) throws IOException {
+    if (!keys.containsKey(key)) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("WatchKey " + key + " not recognized!");
+      }
+      return ImmutableList.of();
+    }
+    final Path rootDir = keys.get(key).get(0);
+    final Path watchDir = keys.get(key).get(1);
+    final List<Path> changedFiles = new ArrayList<>();
+
+    for (WatchEvent<?> watchEvent : key.pollEvents()) {
+      if (!(watchEvent.context() instanceof Path)) {
+        continue;
+      }
+      Path changed = watchDir.resolve((Path) watchEvent.context());
+
+      // files in new directories might have been created before the watch is registered
+      if (watchEvent.kind() == ENTRY_CREATE && Files.isDirectory(changed)) {
+        keys.putAll(watchDirectory(watchService, rootDir, changed));
+
+        try (Stream<Path> files = loadPathStream(changed)) {
+          files.filter(this::isStoreFile).map(rootDir::relativize).forEach(changedFiles::add);
+        }
+        continue;
+      }
+
+      if (isStoreFile(changed)) {
+        changedFiles.add(rootDir.relativize(changed));
+      }
+    }
+
+    if (!key.reset()) {
+      keys.remove(key);
+    }
+
+    return changedFiles;
+  }
+
+  // TODO: either inject from store or filter at a later stage
+  private boolean isStoreFile(Path path) {
+    String fileExtension = getFileExtension(path.toString());
+
+    return Objects.equals(fileExtension, "yml")
+        || Objects.equals(fileExtension, "yaml")
+        || Objects.equals(fileExtension, "json");
+  }
+
   private Map<WatchKey, List<Path>> watchDirectory(WatchService watchService, Path rootDir)
       throws IOException {
+    return watchDirectory(watchService, rootDir, rootDir);
+  }
+
+  private Map<WatchKey, List<Path>> watchDirectory(
+      WatchService watchService, Path rootDir, Path startDir) throws IOException {
     final Map<WatchKey, List<Path>> keys = new HashMap<>();
 
     Files.walkFileTree(
-        rootDir,
+        startDir,
         new SimpleFileVisitor<Path>() {
           @Override
           public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
@@ -283,6 +474,32 @@ public class EventStoreDriverFs implements EventStoreDriver {
     }
   }
 
+  // top-level files of every event type plus the subtrees of the given entity types
+  private Stream<Path> loadPathStream(Path directory, List<String> entityTypes) {
+    try (Stream<Path> eventTypeDirectories = Files.list(directory)) {
+      List<Path> paths = new ArrayList<>();
+
+      for (Path eventTypeDirectory :
+          eventTypeDirectories.filter(Files::isDirectory).collect(Collectors.toList())) {
+        try (Stream<Path> children = Files.list(eventTypeDirectory)) {
+          children.filter(Files::isRegularFile).forEach(paths::add);
+        }
+        for (String entityType : entityTypes) {
+          Path entityTypeDirectory = eventTypeDirectory.resolve(entityType);
+          if (Files.isDirectory(entityTypeDirectory)) {
+            try (Stream<Path> files = loadPathStream(entityTypeDirectory)) {
+              files.forEach(paths::add);
+            }
+          }
+        }
+      }
+
+      return paths.stream();
+    } catch (IOException e) {
+      throw new IllegalStateException("Reading event from store path failed", e);
+    }
+  }
+
   private byte[] readPayload(Path path) {
     try {
       return Files.readAllBytes(path);
@@ -291,22 +508,153 @@ public class EventStoreDriverFs implements EventStoreDriver {
     }
   }
 
+  // a crash while writing leaves the previous file intact, temporary files are ignored on replay
   @Override
   public void saveEvent(EntityEvent event) throws IOException {
     // TODO: check mainPath first, if exists use override
     // TODO: if override exists, merge with incoming
     Path eventPath = eventPaths.getSavePath(event);
-    /*if (Files.exists(eventPath)) {
-        eventPath = getEventFilePath(event.type(), event.identifier(), event.format(), savePathPattern);
-    }*/
-    Files.createDirectories(eventPath.getParent());
-    Files.write(eventPath, event.payload());
+    Path tmpPath = null;
+
+    try (Timer.Context ignored = writeTimer.time()) {
+      Files.createDirectories(eventPath.getParent());
+      tmpPath = createTmpFile(eventPath);
+      writeFile(tmpPath, event.payload(), fsync != FsyncPolicy.NEVER);
+      Files.move(
+          tmpPath, eventPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      // a single event is a batch of its own, so BATCHED syncs the directory just like ALWAYS
+      if (fsync != FsyncPolicy.NEVER) {
+        syncDirectory(eventPath.getParent());
+      }
+    } catch (IOException e) {
+      if (Objects.nonNull(tmpPath)) {
+        Files.deleteIfExists(tmpPath);
+      }
+      throw e;
+    }
 
     if (LOGGER.isDebugEnabled()) {
       LOGGER.debug("Saved event to file {}", eventPath);
     }
   }
 
+  // stages all writes in temporary files first, a failure while staging leaves the store unchanged;
+  // applying is not atomic, a failure there leaves the events before it applied
+  @Override
+  public void saveEvents(List<EntityEvent> events) throws IOException {
+    List<Path> staged = new ArrayList<>();
+    Set<Path> directories = new TreeSet<>();
+
+    try (Timer.Context ignored = writeTimer.time()) {
+      try {
+        for (EntityEvent event : events) {
+          if (Objects.equals(event.deleted(), true)) {
+            staged.add(null);
+            continue;
+          }
+          Path eventPath = eventPaths.getSavePath(event);
+          Files.createDirectories(eventPath.getParent());
+          Path tmpPath = createTmpFile(eventPath);
+          staged.add(tmpPath);
+          writeFile(tmpPath, event.payload(), fsync != FsyncPolicy.NEVER);
+        }
+      } catch (IOException e) {
+        deleteStaged(staged, 0);
+        throw e;
+      }
+
+      for (int i = 0; i < events.size(); i++) {
+        EntityEvent event = events.get(i);
+
+        try {
+          if (Objects.equals(event.deleted(), true)) {
+            deleteAllEvents(event.type(), event.identifier(), event.format());
+          } else {
+            Path eventPath = eventPaths.getSavePath(event);
+            Files.move(
+                staged.get(i),
+                eventPath,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+            if (fsync == FsyncPolicy.ALWAYS) {
+              syncDirectory(eventPath.getParent());
+            } else if (fsync == FsyncPolicy.BATCHED) {
+              directories.add(eventPath.getParent());
+            }
+
+            if (LOGGER.isDebugEnabled()) {
+              LOGGER.debug("Saved event to file {}", eventPath);
+            }
+          }
+        } catch (IOException e) {
+          deleteStaged(staged, i);
+          for (Path directory : directories) {
+            syncDirectory(directory);
+          }
+          if (i > 0) {
+            throw new PartialSaveException(i, e);
+          }
+          throw e;
+        }
+      }
+
+      for (Path directory : directories) {
+        syncDirectory(directory);
+      }
+    }
+  }
+
+  private static void deleteStaged(List<Path> staged, int from) {
+    for (Path tmpPath : staged.subList(from, staged.size())) {
+      if (Objects.nonNull(tmpPath)) {
+        try {
+          Files.deleteIfExists(tmpPath);
+        } catch (IOException e) {
+          LOGGER.warn("Could not delete temporary file {}: {}", tmpPath, e.getMessage());
+        }
+      }
+    }
+  }
+
+  // unique per write, concurrent saves of the same event must not share a temporary file
+  private static Path createTmpFile(Path eventPath) throws IOException {
+    return Files.createTempFile(eventPath.getParent(), "." + eventPath.getFileName(), ".tmp");
+  }
+
+  private void writeFile(Path path, byte[] payload, boolean force) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.wrap(payload);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      if (force) {
+        try (Timer.Context ignored = fsyncTimer.time()) {
+          channel.force(true);
+        }
+      }
+    }
+
+    bytesWritten.mark(payload.length);
+  }
+
+  // persists renames, not supported on every platform
+  private void syncDirectory(Path directory) {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ);
+        Timer.Context ignored = fsyncTimer.time()) {
+      channel.force(true);
+    } catch (IOException e) {
+      if (LOGGER.isTraceEnabled()) {
+        LOGGER.trace("Cannot sync directory {}: {}", directory, e.getMessage());
+      }
+    }
+  }
+
   // TODO: only delete overrides if migration
   @Override
   public void deleteAllEvents(String type, Identifier identifier, String format)
@@ -15,8 +15,11 @@ import akka.http.javadsl.model.MediaTypes;
 import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
 import akka.util.ByteString;
+import akka.util.ByteStringBuilder;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 public interface HttpClient {
 
@@ -58,4 +61,16 @@ public interface HttpClient {
       String url, String body, ContentType.NonBinary contentType) {
     return postAsInputStream(url, body.getBytes(), contentType);
   }
+
+  // the whole response is buffered, fails with a TimeoutException if it is not complete in time
+  default InputStream postAsInputStream(
+      String url, byte[] body, ContentType.NonBinary contentType, Duration timeout) {
+    ByteStringBuilder response = ByteString.createBuilder();
+
+    return post(url, body, contentType, Sink.foreach(response::append))
+        .toCompletableFuture()
+        .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+        .thenApply(done -> response.result().iterator().asInputStream())
+        .join();
+  }
 }